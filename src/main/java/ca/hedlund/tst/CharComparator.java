@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * Comparator for node chars which compares primitive chars.  Trees
+ * constructed with a CharComparator compare chars without boxing.
+ */
+@FunctionalInterface
+public interface CharComparator extends Comparator<Character> {
+
+	/**
+	 * Compare two chars
+	 *
+	 * @param c1
+	 * @param c2
+	 * @return negative, zero or positive as c1 is less than, equal to
+	 *  or greater than c2
+	 */
+	public int compareChars(char c1, char c2);
+
+	@Override
+	public default int compare(Character c1, Character c2) {
+		return compareChars(c1, c2);
+	}
+
+	@Override
+	public default CharComparator reversed() {
+		final CharComparator comparator = this;
+		return (CharComparator & Serializable)(c1, c2) -> comparator.compareChars(c2, c1);
+	}
+
+	/**
+	 * Comparator for chars in reverse natural order
+	 */
+	public static CharComparator reverseOrder() {
+		return (CharComparator & Serializable)(c1, c2) -> Character.compare(c2, c1);
+	}
+
+	/**
+	 * Compare chars using the given comparator, <code>null</code> for
+	 * natural ordering.  Chars are only boxed if comparator is not
+	 * a CharComparator.
+	 *
+	 * @param comparator
+	 * @param c1
+	 * @param c2
+	 * @return comparison result
+	 */
+	public static int compare(Comparator<Character> comparator, char c1, char c2) {
+		if(comparator == null)
+			return Character.compare(c1, c2);
+		else if(comparator instanceof CharComparator)
+			return ((CharComparator)comparator).compareChars(c1, c2);
+		else
+			return comparator.compare(c1, c2);
+	}
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Array backed ternary tree node storage.  Nodes are addressed by index,
+ * split chars are stored in a <code>char[]</code> and child links in
+ * parallel <code>int[]</code> arrays.  Node <code>0</code> is the root
+ * and represents the empty string, since the root can never be a child
+ * a child index of <code>0</code> means no child.
+ *
+ * Value storage is left to the owning tree, value arrays should be
+ * grown along with {@link #capacity()}.
+ */
+final class CompactNodeStore implements IndexedNodeStore, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private char[] chars;
+
+	private int[] left;
+
+	private int[] center;
+
+	private int[] right;
+
+	private int nodeCount;
+
+	private final Comparator<Character> comparator;
+
+	CompactNodeStore(Comparator<Character> comparator) {
+		this(comparator, DEFAULT_CAPACITY);
+	}
+
+	CompactNodeStore(Comparator<Character> comparator, int capacity) {
+		super();
+		this.comparator = comparator;
+		capacity = Math.max(capacity, DEFAULT_CAPACITY);
+		this.chars = new char[capacity];
+		this.left = new int[capacity];
+		this.center = new int[capacity];
+		this.right = new int[capacity];
+		this.nodeCount = 1;
+	}
+
+	Comparator<Character> getComparator() {
+		return comparator;
+	}
+
+	int nodeCount() {
+		return nodeCount;
+	}
+
+	int capacity() {
+		return chars.length;
+	}
+
+	@Override
+	public char getChar(int node) {
+		return chars[node];
+	}
+
+	@Override
+	public int getLeft(int node) {
+		return left[node];
+	}
+
+	@Override
+	public int getCenter(int node) {
+		return center[node];
+	}
+
+	@Override
+	public int getRight(int node) {
+		return right[node];
+	}
+
+	/**
+	 * Remove all nodes except the root
+	 */
+	void clear() {
+		Arrays.fill(left, 0, nodeCount, 0);
+		Arrays.fill(center, 0, nodeCount, 0);
+		Arrays.fill(right, 0, nodeCount, 0);
+		nodeCount = 1;
+	}
+
+	/**
+	 * Shrink arrays to the number of nodes.
+	 *
+	 * @return new capacity
+	 */
+	int trimToSize() {
+		if(nodeCount < chars.length)
+			resize(Math.max(nodeCount, DEFAULT_CAPACITY));
+		return chars.length;
+	}
+
+	private void resize(int capacity) {
+		chars = Arrays.copyOf(chars, capacity);
+		left = Arrays.copyOf(left, capacity);
+		center = Arrays.copyOf(center, capacity);
+		right = Arrays.copyOf(right, capacity);
+	}
+
+	/**
+	 * Allocate a new node
+	 *
+	 * @param ch
+	 * @return node index
+	 */
+	int newNode(char ch) {
+		if(nodeCount == chars.length) {
+			final int newCapacity = chars.length + (chars.length >> 1);
+			if(newCapacity < 0)
+				throw new IllegalStateException("Too many nodes");
+			resize(newCapacity);
+		}
+		final int node = nodeCount++;
+		chars[node] = ch;
+		return node;
+	}
+
+	void setLeft(int node, int child) {
+		left[node] = child;
+	}
+
+	void setCenter(int node, int child) {
+		center[node] = child;
+	}
+
+	void setRight(int node, int child) {
+		right[node] = child;
+	}
+
+	int compare(char c1, char c2) {
+		return CharComparator.compare(comparator, c1, c2);
+	}
+
+	/**
+	 * Find the node for the given key.
+	 *
+	 * @param key
+	 * @param create create missing nodes
+	 * @return node index or {@link #NONE}
+	 */
+	int findNode(String key, boolean create) {
+		if(key.length() == 0) return ROOT;
+
+		int node = ROOT;
+		int charIndex = 0;
+		while(true) {
+			final int cmp = compare(key.charAt(charIndex), chars[node]);
+			int child;
+			if(cmp == 0) {
+				if(++charIndex == key.length())
+					return node;
+				child = center[node];
+			} else {
+				child = (cmp < 0 ? left[node] : right[node]);
+			}
+
+			if(child == 0) {
+				if(!create)
+					return NONE;
+				child = newNode(key.charAt(charIndex));
+				if(cmp == 0)
+					center[node] = child;
+				else if(cmp < 0)
+					left[node] = child;
+				else
+					right[node] = child;
+				for(int i = charIndex + 1; i < key.length(); i++) {
+					final int next = newNode(key.charAt(i));
+					center[child] = next;
+					child = next;
+				}
+				return child;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Returns the path for the given key.
+	 *
+	 * @param key
+	 * @return path or <code>null</code> if key has no node
+	 */
+	TernaryTreeNodePath getPath(String key) {
+		if(key.length() == 0) return new TernaryTreeNodePath();
+
+		byte[] moves = new byte[key.length() * 2];
+		int numMoves = 0;
+		int node = ROOT;
+		int charIndex = 0;
+		while(true) {
+			final int cmp = compare(key.charAt(charIndex), chars[node]);
+			if(cmp == 0 && charIndex + 1 == key.length())
+				break;
+			if(numMoves == moves.length)
+				moves = Arrays.copyOf(moves, moves.length * 2);
+			if(cmp == 0) {
+				++charIndex;
+				node = center[node];
+				moves[numMoves++] = TernaryTreeNodePath.CENTER_CHILD;
+			} else if(cmp < 0) {
+				node = left[node];
+				moves[numMoves++] = TernaryTreeNodePath.LEFT_CHILD;
+			} else {
+				node = right[node];
+				moves[numMoves++] = TernaryTreeNodePath.RIGHT_CHILD;
+			}
+			if(node == 0) return null;
+		}
+
+		// paths are built from the node up to the root
+		final TernaryTreeNodePath path = new TernaryTreeNodePath();
+		for(int i = numMoves - 1; i >= 0; i--) {
+			switch(moves[i]) {
+			case TernaryTreeNodePath.LEFT_CHILD:
+				path.pushLeft();
+				break;
+
+			case TernaryTreeNodePath.RIGHT_CHILD:
+				path.pushRight();
+				break;
+
+			default:
+				path.pushCenter();
+				break;
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Follow the given path from the root
+	 *
+	 * @param path
+	 * @return node index or {@link #NONE}
+	 */
+	int followPath(TernaryTreeNodePath path) {
+		return path.followPath(ROOT, (node, move) -> {
+			final int child;
+			switch(move) {
+			case TernaryTreeNodePath.LEFT_CHILD:
+				child = left[node];
+				break;
+
+			case TernaryTreeNodePath.RIGHT_CHILD:
+				child = right[node];
+				break;
+
+			default:
+				child = center[node];
+				break;
+			}
+			return (child == 0 ? NONE : child);
+		});
+	}
+
+	/**
+	 * Returns the key for the node at the given path.
+	 *
+	 * @param path
+	 * @return key or <code>null</code>
+	 */
+	String getKey(TernaryTreeNodePath path) {
+		final StringBuilder builder = new StringBuilder();
+		final int node = path.followPath(ROOT, (n, move) -> {
+			final int child;
+			switch(move) {
+			case TernaryTreeNodePath.LEFT_CHILD:
+				child = left[n];
+				break;
+
+			case TernaryTreeNodePath.RIGHT_CHILD:
+				child = right[n];
+				break;
+
+			default:
+				builder.append(chars[n]);
+				child = center[n];
+				break;
+			}
+			return (child == 0 ? NONE : child);
+		});
+		if(node == NONE) return null;
+		if(node != ROOT)
+			builder.append(chars[node]);
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Ternary search tree with array backed node storage.  Instead of one
+ * object per node split chars and child links are kept in parallel primitive
+ * arrays with values in a side array, reducing per-node memory several-fold
+ * compared to {@link TernaryTree}.</p>
+ *
+ * <p>Nodes are never reclaimed, removing a key clears the value of the key's
+ * node.  When created using {@link #CompactTernaryTree(TernaryTree)} the
+ * shape of the source tree is preserved and {@link TernaryTreeNodePath}s
+ * are interchangeable between the two trees.</p>
+ *
+ * <p>This implementation is thread safe, lookups share a read lock.</p>
+ *
+ * @param <V>
+ */
+public class CompactTernaryTree<V> extends AbstractMap<String, V> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final CompactNodeStore store;
+
+	private Object[] values;
+
+	private volatile int size = 0;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private transient Set<Map.Entry<String, V>> entrySet;
+
+	public CompactTernaryTree() {
+		this((Comparator<Character>)null);
+	}
+
+	public CompactTernaryTree(Comparator<Character> comparator) {
+		super();
+		this.store = new CompactNodeStore(comparator);
+		this.values = new Object[store.capacity()];
+	}
+
+	/**
+	 * Create a compact copy of the given tree.  The structure of the tree
+	 * is preserved.
+	 *
+	 * @param tree
+	 */
+	public CompactTernaryTree(TernaryTree<V> tree) {
+		super();
+		this.store = new CompactNodeStore(tree.getComparator());
+		this.values = new Object[store.capacity()];
+		tree.getLock().readLock().lock();
+		try {
+			copyStructure(tree.getRoot());
+		} finally {
+			tree.getLock().readLock().unlock();
+		}
+	}
+
+	private void copyStructure(TernaryTreeNode<V> root) {
+		values[CompactNodeStore.ROOT] = root.getValue();
+		if(root.isTerminated()) ++size;
+
+		final Deque<TernaryTreeNode<V>> nodeStack = new ArrayDeque<>();
+		final Deque<Integer> indexStack = new ArrayDeque<>();
+		nodeStack.push(root);
+		indexStack.push(CompactNodeStore.ROOT);
+		while(!nodeStack.isEmpty()) {
+			final TernaryTreeNode<V> node = nodeStack.pop();
+			final int index = indexStack.pop();
+			if(node.getLeft() != null) {
+				final int child = copyNode(node.getLeft());
+				store.setLeft(index, child);
+				nodeStack.push(node.getLeft());
+				indexStack.push(child);
+			}
+			if(node.getCenter() != null) {
+				final int child = copyNode(node.getCenter());
+				store.setCenter(index, child);
+				nodeStack.push(node.getCenter());
+				indexStack.push(child);
+			}
+			if(node.getRight() != null) {
+				final int child = copyNode(node.getRight());
+				store.setRight(index, child);
+				nodeStack.push(node.getRight());
+				indexStack.push(child);
+			}
+		}
+	}
+
+	private int copyNode(TernaryTreeNode<V> node) {
+		final int index = store.newNode(node.getChar());
+		ensureValueCapacity();
+		values[index] = node.getValue();
+		if(node.isTerminated()) ++size;
+		return index;
+	}
+
+	private void ensureValueCapacity() {
+		if(values.length < store.capacity())
+			values = Arrays.copyOf(values, store.capacity());
+	}
+
+	public Comparator<Character> getComparator() {
+		return store.getComparator();
+	}
+
+	/**
+	 * Number of nodes allocated in the tree, including the root
+	 *
+	 * @return node count
+	 */
+	public int nodeCount() {
+		lock.readLock().lock();
+		try {
+			return store.nodeCount();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Release unused capacity in node and value arrays.
+	 */
+	public void trimToSize() {
+		lock.writeLock().lock();
+		try {
+			values = Arrays.copyOf(values, store.trimToSize());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		lock.readLock().lock();
+		try {
+			final int node = store.findNode(key.toString(), false);
+			return (node == CompactNodeStore.NONE ? null : (V)values[node]);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public V put(String key, V value) {
+		Objects.requireNonNull(value);
+		lock.writeLock().lock();
+		try {
+			final int node = store.findNode(key, true);
+			ensureValueCapacity();
+			return setValue(node, value);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		lock.writeLock().lock();
+		try {
+			final int node = store.findNode(key.toString(), false);
+			return (node == CompactNodeStore.NONE ? null : setValue(node, null));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V setValue(int node, V value) {
+		final V oldVal = (V)values[node];
+		values[node] = value;
+		if(oldVal == null && value != null)
+			++size;
+		else if(oldVal != null && value == null)
+			--size;
+		return oldVal;
+	}
+
+	/**
+	 * Removes all entries and nodes from the tree.
+	 */
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			Arrays.fill(values, 0, store.nodeCount(), null);
+			store.clear();
+			size = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		Set<Map.Entry<String, V>> retVal = entrySet;
+		if(retVal == null) {
+			retVal = new EntrySet();
+			entrySet = retVal;
+		}
+		return retVal;
+	}
+
+	public Set<String> keysWithPrefix(String prefix) {
+		final LinkedHashSet<String> retVal = new LinkedHashSet<>();
+		lock.readLock().lock();
+		try {
+			final int node = store.findNode(prefix, false);
+			if(node != CompactNodeStore.NONE) {
+				final IndexedNodeIterator itr = new IndexedNodeIterator(store, node, prefix, n -> values[n] != null);
+				while(itr.hasNext()) {
+					itr.next();
+					retVal.add(itr.currentKey().toString());
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return retVal;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Collection<V> valuesWithPrefix(String prefix) {
+		final List<V> retVal = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			final int node = store.findNode(prefix, false);
+			if(node != CompactNodeStore.NONE) {
+				final IndexedNodeIterator itr = new IndexedNodeIterator(store, node, prefix, n -> values[n] != null);
+				while(itr.hasNext()) {
+					retVal.add((V)values[itr.next()]);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the path for the node of the given key
+	 *
+	 * @param key
+	 * @return path for key or an empty optional if key has no node
+	 */
+	public Optional<TernaryTreeNodePath> getPath(String key) {
+		lock.readLock().lock();
+		try {
+			return Optional.ofNullable(store.getPath(key));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the key for the node at the given path
+	 *
+	 * @param path
+	 * @return key of node or an empty optional if path does not exist
+	 */
+	public Optional<String> getKey(TernaryTreeNodePath path) {
+		lock.readLock().lock();
+		try {
+			return Optional.ofNullable(store.getKey(path));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the value at the given path
+	 *
+	 * @param path
+	 * @return value of node at path, <code>null</code> if the path does not
+	 *  exist or the node is not terminated
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(TernaryTreeNodePath path) {
+		lock.readLock().lock();
+		try {
+			final int node = store.followPath(path);
+			return (node == CompactNodeStore.NONE ? null : (V)values[node]);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<String, V>> {
+
+		@Override
+		public Iterator<Map.Entry<String, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return CompactTernaryTree.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if(!(o instanceof Map.Entry)) return false;
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+			if(entry.getKey() == null || entry.getValue() == null) return false;
+			return entry.getValue().equals(get(entry.getKey()));
+		}
+
+		@Override
+		public void clear() {
+			CompactTernaryTree.this.clear();
+		}
+
+	}
+
+	private final class EntryIterator implements Iterator<Map.Entry<String, V>> {
+
+		private final IndexedNodeIterator itr = new IndexedNodeIterator(store, n -> values[n] != null);
+
+		private String lastKey;
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map.Entry<String, V> next() {
+			final int node = itr.next();
+			lastKey = itr.currentKey().toString();
+			return new WriteThroughEntry(lastKey, (V)values[node]);
+		}
+
+		@Override
+		public void remove() {
+			if(lastKey == null)
+				throw new IllegalStateException();
+			CompactTernaryTree.this.remove(lastKey);
+			lastKey = null;
+		}
+
+	}
+
+	private final class WriteThroughEntry extends AbstractMap.SimpleEntry<String, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		public WriteThroughEntry(String key, V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(V value) {
+			final V oldVal = super.setValue(value);
+			put(getKey(), value);
+			return oldVal;
+		}
+
+	}
+
+}
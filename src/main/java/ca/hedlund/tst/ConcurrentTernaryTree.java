@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import ca.hedlund.tst.TernaryTreeNode.Position;
+
+/**
+ * <p>Lock-free concurrent ternary search tree.  Child nodes are inserted
+ * using compare-and-set and values are updated atomically, no global lock
+ * is used for reads or writes.</p>
+ *
+ * <p>Nodes are never removed from the tree, removing a key clears the value
+ * of the key's node.  Iterators and views are weakly consistent.  As with
+ * {@link java.util.concurrent.ConcurrentSkipListMap} the functions given to
+ * {@link #computeIfAbsent(String, Function)}, {@link #compute(String, BiFunction)},
+ * {@link #computeIfPresent(String, BiFunction)} and {@link #merge(String, Object, BiFunction)}
+ * may be invoked more than once under contention, however only one result
+ * is atomically stored.</p>
+ *
+ * @param <V>
+ */
+public class ConcurrentTernaryTree<V> extends AbstractMap<String, V> implements ConcurrentMap<String, V>, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Root, holds the value for the empty string
+	 */
+	private transient TernaryTreeNode<V> root = new RootNode<>();
+
+	/**
+	 * Number of entries
+	 */
+	private transient LongAdder count = new LongAdder();
+
+	/**
+	 * Collator
+	 */
+	private final Comparator<Character> comparator;
+
+	private transient Set<Map.Entry<String, V>> entrySet;
+
+	public ConcurrentTernaryTree() {
+		this(null);
+	}
+
+	public ConcurrentTernaryTree(Comparator<Character> comparator) {
+		super();
+		this.comparator = comparator;
+	}
+
+	public TernaryTreeNode<V> getRoot() {
+		return root;
+	}
+
+	/*
+	 * Nodes are written using the codec so that long keys do not overflow
+	 * the stack.  The tree may be modified while writing, as with iterators
+	 * the written entries are weakly consistent.
+	 */
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		oos.defaultWriteObject();
+		new TernaryTreeCodec<V>(new TernaryTree.ObjectStreamValueSerializer<V>())
+			.write(oos, root, TernaryTreeCodec.UNKNOWN_SIZE);
+	}
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		ois.defaultReadObject();
+		root = new RootNode<>();
+		count = new LongAdder();
+		count.add(new TernaryTreeCodec<V>(new TernaryTree.ObjectStreamValueSerializer<V>()).read(ois, root));
+	}
+
+	@Override
+	public int size() {
+		final long sum = count.sum();
+		return (sum < 0 ? 0 : (sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)sum));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return count.sum() <= 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		final TernaryTreeNode<V> node = findNode(key.toString(), false);
+		return node != null && node.isTerminated();
+	}
+
+	@Override
+	public V get(Object key) {
+		final TernaryTreeNode<V> node = findNode(key.toString(), false);
+		return node != null ? node.getValue() : null;
+	}
+
+	@Override
+	public V put(String key, V value) {
+		Objects.requireNonNull(value);
+		final V oldVal = findNode(key, true).getAndSetValue(value);
+		if(oldVal == null)
+			count.increment();
+		return oldVal;
+	}
+
+	@Override
+	public V putIfAbsent(String key, V value) {
+		Objects.requireNonNull(value);
+		final TernaryTreeNode<V> node = findNode(key, true);
+		while(true) {
+			final V current = node.getValue();
+			if(current != null)
+				return current;
+			if(node.compareAndSetValue(null, value)) {
+				count.increment();
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		final TernaryTreeNode<V> node = findNode(key.toString(), false);
+		if(node == null) return null;
+		while(true) {
+			final V current = node.getValue();
+			if(current == null)
+				return null;
+			if(node.compareAndSetValue(current, null)) {
+				count.decrement();
+				return current;
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if(key == null || value == null) return false;
+		final TernaryTreeNode<V> node = findNode(key.toString(), false);
+		if(node == null) return false;
+		while(true) {
+			final V current = node.getValue();
+			if(current == null || !current.equals(value))
+				return false;
+			if(node.compareAndSetValue(current, null)) {
+				count.decrement();
+				return true;
+			}
+		}
+	}
+
+	@Override
+	public boolean replace(String key, V oldValue, V newValue) {
+		Objects.requireNonNull(oldValue);
+		Objects.requireNonNull(newValue);
+		final TernaryTreeNode<V> node = findNode(key, false);
+		if(node == null) return false;
+		while(true) {
+			final V current = node.getValue();
+			if(current == null || !current.equals(oldValue))
+				return false;
+			if(node.compareAndSetValue(current, newValue))
+				return true;
+		}
+	}
+
+	@Override
+	public V replace(String key, V value) {
+		Objects.requireNonNull(value);
+		final TernaryTreeNode<V> node = findNode(key, false);
+		if(node == null) return null;
+		while(true) {
+			final V current = node.getValue();
+			if(current == null)
+				return null;
+			if(node.compareAndSetValue(current, value))
+				return current;
+		}
+	}
+
+	@Override
+	public V computeIfAbsent(String key, Function<? super String, ? extends V> mappingFunction) {
+		Objects.requireNonNull(mappingFunction);
+		final TernaryTreeNode<V> node = findNode(key, true);
+		V current = node.getValue();
+		if(current != null)
+			return current;
+		final V value = mappingFunction.apply(key);
+		if(value == null)
+			return null;
+		while(true) {
+			if(node.compareAndSetValue(null, value)) {
+				count.increment();
+				return value;
+			}
+			current = node.getValue();
+			if(current != null)
+				return current;
+		}
+	}
+
+	@Override
+	public V computeIfPresent(String key, BiFunction<? super String, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
+		final TernaryTreeNode<V> node = findNode(key, false);
+		if(node == null) return null;
+		while(true) {
+			final V current = node.getValue();
+			if(current == null)
+				return null;
+			final V value = remappingFunction.apply(key, current);
+			if(node.compareAndSetValue(current, value)) {
+				if(value == null)
+					count.decrement();
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public V compute(String key, BiFunction<? super String, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
+		final TernaryTreeNode<V> node = findNode(key, true);
+		while(true) {
+			final V current = node.getValue();
+			final V value = remappingFunction.apply(key, current);
+			if(current == null && value == null)
+				return null;
+			if(node.compareAndSetValue(current, value)) {
+				if(current == null)
+					count.increment();
+				else if(value == null)
+					count.decrement();
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public V merge(String key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(value);
+		Objects.requireNonNull(remappingFunction);
+		final TernaryTreeNode<V> node = findNode(key, true);
+		while(true) {
+			final V current = node.getValue();
+			final V newValue = (current == null ? value : remappingFunction.apply(current, value));
+			if(node.compareAndSetValue(current, newValue)) {
+				if(current == null)
+					count.increment();
+				else if(newValue == null)
+					count.decrement();
+				return newValue;
+			}
+		}
+	}
+
+	/**
+	 * Removes all values from the tree.  Nodes are retained.
+	 */
+	@Override
+	public void clear() {
+		final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(root, (n) -> true, false);
+		while(itr.hasNext()) {
+			final TernaryTreeNode<V> node = itr.next();
+			final V current = node.getValue();
+			if(current != null && node.compareAndSetValue(current, null))
+				count.decrement();
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		Set<Map.Entry<String, V>> retVal = entrySet;
+		if(retVal == null) {
+			retVal = new EntrySet();
+			entrySet = retVal;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns all keys with the given prefix
+	 *
+	 * @param prefix
+	 * @return keys with prefix
+	 */
+	public Set<String> keysWithPrefix(String prefix) {
+		final LinkedHashSet<String> retVal = new LinkedHashSet<>();
+		final TernaryTreeNode<V> node = findNode(prefix, false);
+		if(node != null) {
+			final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(node, (n) -> true, !node.isRoot());
+			while(itr.hasNext()) {
+				itr.next();
+				retVal.add(itr.getCurrentKey().toString());
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Find the node for the given key
+	 *
+	 * @param key
+	 *
+	 * @return the node for the given key or an empty optional
+	 */
+	public Optional<TernaryTreeNode<V>> findNode(String key) {
+		return Optional.ofNullable(findNode(key, false));
+	}
+
+	/**
+	 * Find the node for the given key.  If <code>create</code> is true
+	 * missing nodes are linked into the tree with compare-and-set.
+	 *
+	 * @param key
+	 * @param create
+	 * @return node or <code>null</code> if not found and create is false
+	 */
+	private TernaryTreeNode<V> findNode(String key, boolean create) {
+		if(key.length() == 0) return root;
+
+		TernaryTreeNode<V> node = root;
+		int charIndex = 0;
+		while(true) {
+			final char keyChar = key.charAt(charIndex);
+			final int cmp = compare(keyChar, node.getChar());
+			final Position pos;
+			if(cmp == 0) {
+				if(++charIndex == key.length())
+					return node;
+				pos = Position.EQUAL;
+			} else {
+				pos = (cmp < 0 ? Position.LOW : Position.HIGH);
+			}
+
+			TernaryTreeNode<V> child = node.getChild(pos);
+			if(child == null) {
+				if(!create)
+					return null;
+				// link the remaining chain of the key in a single step
+				final TernaryTreeNode<V> head = new TernaryTreeNode<>(node, key.charAt(charIndex));
+				TernaryTreeNode<V> tail = head;
+				for(int i = charIndex + 1; i < key.length(); i++) {
+					final TernaryTreeNode<V> next = new TernaryTreeNode<>(tail, key.charAt(i));
+					tail.setCenter(next);
+					tail = next;
+				}
+				if(node.compareAndSetChild(null, head, pos)) {
+					return tail;
+				}
+				child = node.getChild(pos);
+			}
+			node = child;
+		}
+	}
+
+	private int compare(char c1, char c2) {
+		return CharComparator.compare(comparator, c1, c2);
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<String, V>> {
+
+		@Override
+		public Iterator<Map.Entry<String, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return ConcurrentTernaryTree.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if(!(o instanceof Map.Entry)) return false;
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+			if(entry.getKey() == null || entry.getValue() == null) return false;
+			return entry.getValue().equals(get(entry.getKey()));
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if(!(o instanceof Map.Entry)) return false;
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+			return ConcurrentTernaryTree.this.remove(entry.getKey(), entry.getValue());
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentTernaryTree.this.clear();
+		}
+
+	}
+
+	private final class EntryIterator implements Iterator<Map.Entry<String, V>> {
+
+		private final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(root, (n) -> true, false);
+
+		private String nextKey;
+
+		private V nextValue;
+
+		private String lastKey;
+
+		public EntryIterator() {
+			advance();
+		}
+
+		private void advance() {
+			nextKey = null;
+			nextValue = null;
+			while(itr.hasNext()) {
+				final TernaryTreeNode<V> node = itr.next();
+				// skip values removed since the node was located
+				final V value = node.getValue();
+				if(value != null) {
+					nextKey = itr.getCurrentKey().toString();
+					nextValue = value;
+					break;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextKey != null;
+		}
+
+		@Override
+		public Map.Entry<String, V> next() {
+			if(nextKey == null)
+				throw new NoSuchElementException();
+			final Map.Entry<String, V> retVal = new WriteThroughEntry(nextKey, nextValue);
+			lastKey = nextKey;
+			advance();
+			return retVal;
+		}
+
+		@Override
+		public void remove() {
+			if(lastKey == null)
+				throw new IllegalStateException();
+			ConcurrentTernaryTree.this.remove(lastKey);
+			lastKey = null;
+		}
+
+	}
+
+	private final class WriteThroughEntry extends AbstractMap.SimpleEntry<String, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		public WriteThroughEntry(String key, V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(V value) {
+			Objects.requireNonNull(value);
+			final V oldVal = super.setValue(value);
+			put(getKey(), value);
+			return oldVal;
+		}
+
+	}
+
+	private static final class RootNode<V> extends TernaryTreeNode<V> {
+
+		private static final long serialVersionUID = 1L;
+
+		public RootNode() {
+			super(null, '\u0000');
+		}
+
+		@Override
+		public String getPrefix() {
+			return "";
+		}
+
+	}
+
+}
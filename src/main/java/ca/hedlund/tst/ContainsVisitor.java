@@ -1,6 +1,6 @@
 package ca.hedlund.tst;
 
-public abstract class ContainsVisitor<T, V> implements TernaryTreeNodeVisitor<V> {
+public abstract class ContainsVisitor<T, V> implements TernaryTreeNodeVisitor<V>, TernaryTreeKeyVisitor<V> {
 
 	private final String txt;
 
@@ -33,4 +33,30 @@ public abstract class ContainsVisitor<T, V> implements TernaryTreeNodeVisitor<V>
 
 	public abstract void accept(TernaryTreeNode<V> node);
 
+	/**
+	 * Accept a matching node when using a path-aware traversal.
+	 * Default implementation calls {@link #accept(TernaryTreeNode)}
+	 *
+	 * @param node
+	 * @param key
+	 */
+	public void accept(TernaryTreeNode<V> node, CharSequence key) {
+		accept(node);
+	}
+
+	/**
+	 * Path-aware visit, terminated nodes with a key containing
+	 * the text are accepted.
+	 */
+	@Override
+	public boolean visit(TernaryTreeNode<V> node, CharSequence key) {
+		if(txt.length() == 0 || !node.isTerminated()) return false;
+
+		if(TernaryTreeKeyBuffer.contains(key, txt, caseSensitive)) {
+			accept(node, key);
+			return true;
+		}
+		return false;
+	}
+
 }
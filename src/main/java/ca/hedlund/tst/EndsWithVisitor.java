@@ -1,6 +1,6 @@
 package ca.hedlund.tst;
 
-public abstract class EndsWithVisitor<T, V> implements TernaryTreeNodeVisitor<V> {
+public abstract class EndsWithVisitor<T, V> implements TernaryTreeNodeVisitor<V>, TernaryTreeKeyVisitor<V> {
 
 	private String txt;
 
@@ -15,6 +15,28 @@ public abstract class EndsWithVisitor<T, V> implements TernaryTreeNodeVisitor<V>
 
 	public abstract void accept(TernaryTreeNode<V> node);
 
+	/**
+	 * Accept a matching node when using a path-aware traversal.
+	 * Default implementation calls {@link #accept(TernaryTreeNode)}
+	 *
+	 * @param node
+	 * @param key
+	 */
+	public void accept(TernaryTreeNode<V> node, CharSequence key) {
+		accept(node);
+	}
+
+	@Override
+	public boolean visit(TernaryTreeNode<V> node, CharSequence key) {
+		if(txt.length() == 0 || !node.isTerminated()) return false;
+
+		if(TernaryTreeKeyBuffer.endsWith(key, txt, caseSensitive)) {
+			accept(node, key);
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public boolean visit(TernaryTreeNode<V> node) {
 		if(txt.length() == 0) return false;
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+/**
+ * In-order iterator of nodes in an {@link IndexedNodeStore} matching a
+ * predicate.  The key for the current node is built incrementally.
+ */
+final class IndexedNodeIterator {
+
+	private final IndexedNodeStore store;
+
+	private final IntPredicate filter;
+
+	private final TernaryTreeKeyBuffer keyBuffer;
+
+	/*
+	 * Explicit stack, each frame is a node and its depth in the key
+	 * with the phase in the low bit.
+	 */
+	private int[] stackNodes = new int[32];
+
+	private int[] stackStates = new int[32];
+
+	private int stackSize = 0;
+
+	private int nextNode = IndexedNodeStore.NONE;
+
+	private boolean located = false;
+
+	private int currentNode = IndexedNodeStore.NONE;
+
+	/**
+	 * Iterate all nodes in the store
+	 */
+	IndexedNodeIterator(IndexedNodeStore store, IntPredicate filter) {
+		this(store, IndexedNodeStore.ROOT, "", filter);
+	}
+
+	/**
+	 * Iterate node (if it matches filter) and it's center subtree.  If
+	 * node is the root the entire tree is iterated.
+	 *
+	 * @param store
+	 * @param node
+	 * @param key key of node
+	 * @param filter
+	 */
+	IndexedNodeIterator(IndexedNodeStore store, int node, String key, IntPredicate filter) {
+		this.store = store;
+		this.filter = filter;
+		this.keyBuffer = new TernaryTreeKeyBuffer(key);
+		if(node == IndexedNodeStore.ROOT) {
+			push(IndexedNodeStore.ROOT, 0, 0);
+			// the empty key precedes all other keys regardless of the comparator
+			if(filter.test(IndexedNodeStore.ROOT)) {
+				nextNode = IndexedNodeStore.ROOT;
+				located = true;
+			}
+		} else {
+			final int center = store.getCenter(node);
+			if(center != 0)
+				push(center, key.length(), 0);
+			if(filter.test(node)) {
+				nextNode = node;
+				located = true;
+			}
+		}
+	}
+
+	private void push(int node, int depth, int phase) {
+		if(stackSize == stackNodes.length) {
+			stackNodes = Arrays.copyOf(stackNodes, stackSize * 2);
+			stackStates = Arrays.copyOf(stackStates, stackSize * 2);
+		}
+		stackNodes[stackSize] = node;
+		stackStates[stackSize] = (depth << 1) | phase;
+		++stackSize;
+	}
+
+	private void advance() {
+		nextNode = IndexedNodeStore.NONE;
+		located = true;
+		while(stackSize > 0) {
+			--stackSize;
+			final int node = stackNodes[stackSize];
+			final int depth = stackStates[stackSize] >>> 1;
+			if((stackStates[stackSize] & 1) == 0) {
+				push(node, depth, 1);
+				final int left = store.getLeft(node);
+				if(left != 0)
+					push(left, depth, 0);
+			} else {
+				final int right = store.getRight(node);
+				if(right != 0)
+					push(right, depth, 0);
+				keyBuffer.setLength(depth);
+				keyBuffer.push(store.getChar(node));
+				final int center = store.getCenter(node);
+				if(center != 0)
+					push(center, depth + 1, 0);
+				if(node != IndexedNodeStore.ROOT && filter.test(node)) {
+					nextNode = node;
+					return;
+				}
+			}
+		}
+	}
+
+	boolean hasNext() {
+		if(!located)
+			advance();
+		return nextNode != IndexedNodeStore.NONE;
+	}
+
+	/**
+	 * Move to next node
+	 *
+	 * @return node index
+	 */
+	int next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+		currentNode = nextNode;
+		located = false;
+		return currentNode;
+	}
+
+	/**
+	 * Key of the node most recently returned by {@link #next()},
+	 * only valid until the next call to {@link #hasNext()}
+	 */
+	CharSequence currentKey() {
+		return (currentNode == IndexedNodeStore.ROOT ? "" : keyBuffer);
+	}
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+/**
+ * Node storage addressed by index.  Node {@link #ROOT} is the root and
+ * represents the empty string, a child index of <code>0</code> means
+ * no child.
+ */
+interface IndexedNodeStore {
+
+	static final int ROOT = 0;
+
+	static final int NONE = -1;
+
+	char getChar(int node);
+
+	int getLeft(int node);
+
+	int getCenter(int node);
+
+	int getRight(int node);
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * <p>Ternary search tree with primitive <code>int</code> values, such as
+ * word frequencies or ids.  Nodes are stored as in {@link CompactTernaryTree}
+ * with values in an <code>int[]</code> and a separate terminated bit per
+ * node, no values are boxed.</p>
+ *
+ * <p>Missing keys have the value <code>0</code>, use {@link #containsKey(String)}
+ * or {@link #getOrDefault(String, int)} to tell missing keys from keys
+ * mapped to <code>0</code>.</p>
+ *
+ * <p>This implementation is thread safe, lookups share a read lock.</p>
+ */
+public class IntTernaryTree extends PrimitiveTernaryTree {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] values;
+
+	public IntTernaryTree() {
+		this(null);
+	}
+
+	public IntTernaryTree(Comparator<Character> comparator) {
+		super(comparator);
+		this.values = new int[store.capacity()];
+	}
+
+	@Override
+	int valueCapacity() {
+		return values.length;
+	}
+
+	@Override
+	void resizeValues(int length) {
+		values = Arrays.copyOf(values, length);
+	}
+
+	@Override
+	void clearValues(int count) {
+		Arrays.fill(values, 0, count, 0);
+	}
+
+	/**
+	 * Returns the value for key
+	 *
+	 * @param key
+	 * @return value for key or <code>0</code> if key is not in the tree
+	 */
+	public int getInt(String key) {
+		return getOrDefault(key, 0);
+	}
+
+	/**
+	 * Returns the value for key
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return value for key or defaultValue if key is not in the tree
+	 */
+	public int getOrDefault(String key, int defaultValue) {
+		lock.readLock().lock();
+		try {
+			final int node = findTerminated(key);
+			return (node != CompactNodeStore.NONE ? values[node] : defaultValue);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Set the value for key
+	 *
+	 * @param key
+	 * @param value
+	 * @return previous value or <code>0</code> if key was not in the tree
+	 */
+	public int putInt(String key, int value) {
+		lock.writeLock().lock();
+		try {
+			final int node = addNode(key);
+			final int oldVal = (terminate(node) ? values[node] : 0);
+			values[node] = value;
+			return oldVal;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add delta to the value for key, keys not in the tree are added
+	 * with value delta.
+	 *
+	 * @param key
+	 * @param delta
+	 * @return new value for key
+	 */
+	public int addTo(String key, int delta) {
+		lock.writeLock().lock();
+		try {
+			final int node = addNode(key);
+			if(!terminate(node))
+				values[node] = 0;
+			return (values[node] += delta);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove key from the tree
+	 *
+	 * @param key
+	 * @return previous value or <code>0</code> if key was not in the tree
+	 */
+	public int removeInt(String key) {
+		lock.writeLock().lock();
+		try {
+			final int node = findTerminated(key);
+			if(node == CompactNodeStore.NONE) return 0;
+			unterminate(node);
+			final int oldVal = values[node];
+			values[node] = 0;
+			return oldVal;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sum of values for all keys starting with prefix
+	 *
+	 * @param prefix
+	 * @return sum of values
+	 */
+	public long sumWithPrefix(String prefix) {
+		long retVal = 0L;
+		lock.readLock().lock();
+		try {
+			final IndexedNodeIterator itr = prefixIterator(prefix);
+			if(itr != null) {
+				while(itr.hasNext())
+					retVal += values[itr.next()];
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return retVal;
+	}
+
+	/**
+	 * Visit all entries in key order.  Keys are only valid for the duration
+	 * of the call.  The tree must not be modified by action.
+	 *
+	 * @param action
+	 */
+	public void forEach(ObjIntConsumer<? super CharSequence> action) {
+		forEachWithPrefix("", action);
+	}
+
+	/**
+	 * Visit all entries with keys starting with prefix in key order.  Keys are
+	 * only valid for the duration of the call.  The tree must not be modified
+	 * by action.
+	 *
+	 * @param prefix
+	 * @param action
+	 */
+	public void forEachWithPrefix(String prefix, ObjIntConsumer<? super CharSequence> action) {
+		lock.readLock().lock();
+		try {
+			final IndexedNodeIterator itr = prefixIterator(prefix);
+			if(itr != null) {
+				while(itr.hasNext()) {
+					final int n = itr.next();
+					action.accept(itr.currentKey(), values[n]);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder("{");
+		forEach((key, value) -> {
+			if(builder.length() > 1) builder.append(", ");
+			builder.append(key).append('=').append(value);
+		});
+		return builder.append('}').toString();
+	}
+
+}
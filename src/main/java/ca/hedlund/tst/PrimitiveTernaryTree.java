@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Shared structure for ternary search trees with primitive values.  Nodes
+ * are kept in a {@link CompactNodeStore} with a terminated bit per node,
+ * subclasses keep values in an array indexed by node.
+ */
+abstract class PrimitiveTernaryTree implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	final CompactNodeStore store;
+
+	final BitSet terminated = new BitSet();
+
+	volatile int size = 0;
+
+	final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	PrimitiveTernaryTree(Comparator<Character> comparator) {
+		super();
+		this.store = new CompactNodeStore(comparator);
+	}
+
+	/**
+	 * Length of value array
+	 *
+	 * @return value capacity
+	 */
+	abstract int valueCapacity();
+
+	/**
+	 * Resize value array to the given length.  Must hold write lock.
+	 *
+	 * @param length
+	 */
+	abstract void resizeValues(int length);
+
+	/**
+	 * Reset values for nodes in range [0, count).  Must hold write lock.
+	 *
+	 * @param count
+	 */
+	abstract void clearValues(int count);
+
+	/*
+	 * Find or create node for key and make room for its value.
+	 * Must hold write lock.
+	 */
+	int addNode(String key) {
+		final int node = store.findNode(key, true);
+		if(valueCapacity() < store.capacity())
+			resizeValues(store.capacity());
+		return node;
+	}
+
+	/*
+	 * Node for key if key is in the tree, NONE otherwise.
+	 * Must hold read lock.
+	 */
+	int findTerminated(String key) {
+		final int node = store.findNode(key, false);
+		return (node != CompactNodeStore.NONE && terminated.get(node) ? node : CompactNodeStore.NONE);
+	}
+
+	/*
+	 * Mark node terminated, returns true if node was already terminated.
+	 * Must hold write lock.
+	 */
+	boolean terminate(int node) {
+		if(terminated.get(node)) return true;
+		terminated.set(node);
+		++size;
+		return false;
+	}
+
+	/*
+	 * Clear terminated bit for node.  Must hold write lock.
+	 */
+	void unterminate(int node) {
+		terminated.clear(node);
+		--size;
+	}
+
+	/*
+	 * Iterator over terminated nodes with keys starting with prefix,
+	 * null if prefix has no node.  Must hold read lock.
+	 */
+	IndexedNodeIterator prefixIterator(String prefix) {
+		final int node = store.findNode(prefix, false);
+		return (node != CompactNodeStore.NONE ? new IndexedNodeIterator(store, node, prefix, terminated::get) : null);
+	}
+
+	public Comparator<Character> getComparator() {
+		return store.getComparator();
+	}
+
+	/**
+	 * Number of nodes allocated in the tree, including the root
+	 *
+	 * @return node count
+	 */
+	public int nodeCount() {
+		lock.readLock().lock();
+		try {
+			return store.nodeCount();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Release unused capacity in node and value arrays.
+	 */
+	public void trimToSize() {
+		lock.writeLock().lock();
+		try {
+			resizeValues(store.trimToSize());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(String key) {
+		lock.readLock().lock();
+		try {
+			return findTerminated(key) != CompactNodeStore.NONE;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all entries and nodes from the tree.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			clearValues(store.nodeCount());
+			terminated.clear();
+			store.clear();
+			size = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of keys starting with prefix
+	 *
+	 * @param prefix
+	 * @return number of keys
+	 */
+	public int countWithPrefix(String prefix) {
+		int retVal = 0;
+		lock.readLock().lock();
+		try {
+			final IndexedNodeIterator itr = prefixIterator(prefix);
+			if(itr != null) {
+				for(; itr.hasNext(); itr.next())
+					++retVal;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return retVal;
+	}
+
+	public Set<String> keysWithPrefix(String prefix) {
+		final LinkedHashSet<String> retVal = new LinkedHashSet<>();
+		lock.readLock().lock();
+		try {
+			final IndexedNodeIterator itr = prefixIterator(prefix);
+			if(itr != null) {
+				while(itr.hasNext()) {
+					itr.next();
+					retVal.add(itr.currentKey().toString());
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns the path for the node of the given key
+	 *
+	 * @param key
+	 * @return path for key or an empty optional if key has no node
+	 */
+	public Optional<TernaryTreeNodePath> getPath(String key) {
+		lock.readLock().lock();
+		try {
+			return Optional.ofNullable(store.getPath(key));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+}
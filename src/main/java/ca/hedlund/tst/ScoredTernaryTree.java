@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>Ternary tree which caches the maximum score of each node's subtree,
+ * where the score of an entry is computed from its value using a score
+ * function.  Cached scores allow {@link #topKWithPrefix(String, int)} to
+ * perform a best-first search which only expands subtrees able to contain
+ * one of the top k entries.</p>
+ *
+ * <p>Scores are updated along the path to the root whenever a value
+ * changes, the score of a value must not change while it is in the tree.
+ * To be serializable the score function must be serializable.</p>
+ *
+ * @param <V>
+ */
+public class ScoredTernaryTree<V> extends TernaryTree<V> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ToDoubleFunction<? super V> scoreFunction;
+
+	public ScoredTernaryTree(ToDoubleFunction<? super V> scoreFunction) {
+		this(scoreFunction, null);
+	}
+
+	public ScoredTernaryTree(ToDoubleFunction<? super V> scoreFunction, Comparator<Character> comparator) {
+		super(comparator);
+		this.scoreFunction = scoreFunction;
+	}
+
+	public ToDoubleFunction<? super V> getScoreFunction() {
+		return scoreFunction;
+	}
+
+	@Override
+	protected TernaryTreeNode<V> createRoot() {
+		return new ScoredNode<V>(null, '\u0000');
+	}
+
+	@Override
+	protected TernaryTreeNode<V> createNode(TernaryTreeNode<V> parent, char ch) {
+		return new ScoredNode<V>(parent, ch);
+	}
+
+	/**
+	 * Returns the maximum score of entries in the subtree of node,
+	 * including left and right siblings.
+	 *
+	 * @param node
+	 * @return max score or {@link Double#NEGATIVE_INFINITY} if subtree
+	 *  has no entries
+	 */
+	public double getMaxScore(TernaryTreeNode<V> node) {
+		return (node == null ? Double.NEGATIVE_INFINITY : ((ScoredNode<V>)node).maxScore);
+	}
+
+	private double computeMaxScore(TernaryTreeNode<V> node) {
+		double retVal = (node.isTerminated() ? scoreFunction.applyAsDouble(node.getValue()) : Double.NEGATIVE_INFINITY);
+		retVal = Math.max(retVal, getMaxScore(node.getLeft()));
+		retVal = Math.max(retVal, getMaxScore(node.getCenter()));
+		retVal = Math.max(retVal, getMaxScore(node.getRight()));
+		return retVal;
+	}
+
+	@Override
+	protected void nodeChanged(TernaryTreeNode<V> node) {
+		updateAncestors(node);
+	}
+
+	/*
+	 * Update max score of node and parents until a score is unchanged
+	 */
+	private void updateAncestors(TernaryTreeNode<V> node) {
+		while(node != null) {
+			final ScoredNode<V> scoredNode = (ScoredNode<V>)node;
+			final double maxScore = computeMaxScore(node);
+			if(Double.compare(maxScore, scoredNode.maxScore) == 0) break;
+			scoredNode.maxScore = maxScore;
+			node = node.getParent();
+		}
+	}
+
+	@Override
+	protected void subtreeChanged(TernaryTreeNode<V> node) {
+		// compute scores for children before parents
+		final List<TernaryTreeNode<V>> nodes = new ArrayList<>();
+		nodes.add(node);
+		for(int i = 0; i < nodes.size(); i++) {
+			final TernaryTreeNode<V> n = nodes.get(i);
+			if(n.getLeft() != null) nodes.add(n.getLeft());
+			if(n.getCenter() != null) nodes.add(n.getCenter());
+			if(n.getRight() != null) nodes.add(n.getRight());
+		}
+		for(int i = nodes.size() - 1; i > 0; i--) {
+			((ScoredNode<V>)nodes.get(i)).maxScore = computeMaxScore(nodes.get(i));
+		}
+		((ScoredNode<V>)node).maxScore = Double.NaN;
+		updateAncestors(node);
+	}
+
+	/**
+	 * Returns the k entries with keys starting with prefix which have the
+	 * highest score, ordered by descending score and then by key.
+	 *
+	 * Candidates are expanded best-first using cached subtree scores,
+	 * visiting roughly O(k&middot;depth) nodes.
+	 *
+	 * @param prefix
+	 * @param k
+	 * @return top k entries
+	 */
+	public List<Map.Entry<String, V>> topKWithPrefix(String prefix, int k) {
+		final List<Map.Entry<String, V>> retVal = new ArrayList<>();
+		if(k <= 0) return retVal;
+
+		getLock().readLock().lock();
+		try {
+			final PriorityQueue<Candidate<V>> queue = new PriorityQueue<>(this::compareCandidates);
+			if(prefix.length() == 0) {
+				final TernaryTreeNode<V> root = getRoot();
+				addEntry(queue, root, "");
+				addSubtree(queue, root.getLeft(), "");
+				addSubtree(queue, root.getRight(), "");
+				addSubtree(queue, root.getCenter(), String.valueOf(root.getChar()));
+			} else {
+				final Optional<TernaryTreeNode<V>> node = findNode(prefix);
+				if(!node.isPresent()) return retVal;
+				addEntry(queue, node.get(), prefix);
+				addSubtree(queue, node.get().getCenter(), prefix);
+			}
+
+			while(!queue.isEmpty() && retVal.size() < k) {
+				final Candidate<V> candidate = queue.poll();
+				final TernaryTreeNode<V> node = candidate.node;
+				if(candidate.entry) {
+					retVal.add(new AbstractMap.SimpleImmutableEntry<>(candidate.key, node.getValue()));
+				} else {
+					final String key = candidate.key + node.getChar();
+					addEntry(queue, node, key);
+					addSubtree(queue, node.getLeft(), candidate.key);
+					addSubtree(queue, node.getRight(), candidate.key);
+					addSubtree(queue, node.getCenter(), key);
+				}
+			}
+		} finally {
+			getLock().readLock().unlock();
+		}
+		return retVal;
+	}
+
+	/*
+	 * Highest score first, subtrees are expanded before entries with the
+	 * same score so that ties are returned in key order
+	 */
+	private int compareCandidates(Candidate<V> c1, Candidate<V> c2) {
+		int retVal = Double.compare(c2.score, c1.score);
+		if(retVal == 0 && c1.entry != c2.entry)
+			retVal = (c1.entry ? 1 : -1);
+		if(retVal == 0 && c1.entry)
+			retVal = compareKeys(c1.key, c2.key);
+		return retVal;
+	}
+
+	private void addEntry(PriorityQueue<Candidate<V>> queue, TernaryTreeNode<V> node, String key) {
+		if(node.isTerminated())
+			queue.add(new Candidate<>(node, key, scoreFunction.applyAsDouble(node.getValue()), true));
+	}
+
+	private void addSubtree(PriorityQueue<Candidate<V>> queue, TernaryTreeNode<V> node, String prefix) {
+		if(node != null && getMaxScore(node) != Double.NEGATIVE_INFINITY)
+			queue.add(new Candidate<>(node, prefix, getMaxScore(node), false));
+	}
+
+	/**
+	 * Entry or subtree to be expanded.  For subtrees key is the prefix
+	 * leading to node, excluding the node's char.
+	 */
+	private static final class Candidate<V> {
+
+		final TernaryTreeNode<V> node;
+
+		final String key;
+
+		final double score;
+
+		final boolean entry;
+
+		Candidate(TernaryTreeNode<V> node, String key, double score, boolean entry) {
+			this.node = node;
+			this.key = key;
+			this.score = score;
+			this.entry = entry;
+		}
+
+	}
+
+	/**
+	 * Node with cached max score of subtree
+	 */
+	private static final class ScoredNode<V> extends TernaryTreeNode<V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private transient double maxScore = Double.NEGATIVE_INFINITY;
+
+		ScoredNode(TernaryTreeNode<V> parent, char ch) {
+			super(parent, ch);
+		}
+
+		@Override
+		public String getPrefix() {
+			return (isRoot() ? "" : super.getPrefix());
+		}
+
+	}
+
+}
@@ -1,34 +1,39 @@
 package ca.hedlund.tst;
 
-import java.util.Iterator;
+import java.util.*;
 import java.util.function.*;
 
 /**
- * Iterate terminated tree nodes with optional filter
+ * Iterate terminated tree nodes with optional filter.  Nodes are returned
+ * in key order.
+ *
+ * The iterator keeps an explicit stack of the nodes leading to its position
+ * together with the branch state of each node, so a full iteration visits
+ * each node a constant number of times without allocating.  Iteration is
+ * weakly consistent, nodes removed using {@link #remove()} are unlinked
+ * from the tree once iteration is complete.
  *
  * @param <V>
  */
 public class TerminatedNodeIterator<V> implements Iterator<TernaryTreeNode<V>> {
 
-	private enum Branch {
-		Left,
-		Center,
-		Right,
-		Undefined;
+	/*
+	 * Branch states of nodes on the stack
+	 */
+	/** left subtree not yet visited */
+	private static final byte ENTER = 0;
 
-		public Branch nextBranch() {
-			switch(this) {
-				case Left:
-					return Center;
+	/** node and center subtree not yet visited */
+	private static final byte LEFT_DONE = 1;
 
-				case Center:
-					return Right;
+	/** only the right subtree remains, or when descending the node and left subtree */
+	private static final byte CENTER_DONE = 2;
 
-				default:
-					return Undefined;
-			}
-		}
-	}
+	/** descending: node, center and left subtree not yet visited */
+	private static final byte RIGHT_DONE = 3;
+
+	/** descending: only the left subtree remains */
+	private static final byte SELF_DONE = 4;
 
 	private final TernaryTree<V> tree;
 
@@ -36,12 +41,54 @@ public class TerminatedNodeIterator<V> implements Iterator<TernaryTreeNode<V>> {
 
 	private TernaryTreeNode<V> currentNode;
 
-	private Branch currentBranch;
-
 	private boolean prefixSearch;
 
 	private Predicate<TernaryTreeNode<V>> filter;
 
+	/**
+	 * Iterate in descending key order
+	 */
+	private final boolean descending;
+
+	/**
+	 * Iteration stops at the first key not accepted by limit
+	 */
+	private Predicate<CharSequence> limit;
+
+	/**
+	 * Key buffer.  Holds the full key of the most recently located node.
+	 */
+	private final TernaryTreeKeyBuffer keyBuffer = new TernaryTreeKeyBuffer();
+
+	/*
+	 * Stack of nodes and branch states
+	 */
+	private Object[] nodes = new Object[32];
+
+	private byte[] states = new byte[32];
+
+	private int depth = 0;
+
+	/**
+	 * Has the stack been built for the current or start node
+	 */
+	private boolean positioned = false;
+
+	/**
+	 * Next node located by {@link #hasNext()}
+	 */
+	private TernaryTreeNode<V> lookahead;
+
+	private boolean hasLookahead = false;
+
+	private boolean canRemove = false;
+
+	/**
+	 * Root holding the empty key which is returned before (or when
+	 * descending, after) all other keys regardless of the char comparator
+	 */
+	private TernaryTreeNode<V> pendingRoot;
+
 	public TerminatedNodeIterator(TernaryTree<V> tree) {
 		this(tree, (node) -> true);
 	}
@@ -54,32 +101,50 @@ public class TerminatedNodeIterator<V> implements Iterator<TernaryTreeNode<V>> {
 		this(tree, node, (n) -> true, false);
 	}
 
+	/**
+	 * Iterate terminated nodes starting at the given node, for trees
+	 * which are not an instance of {@link TernaryTree}.  {@link #remove()}
+	 * is not supported.
+	 *
+	 * @param node
+	 * @param filter
+	 * @param prefixSearch
+	 */
+	TerminatedNodeIterator(TernaryTreeNode<V> node, Predicate<TernaryTreeNode<V>> filter, boolean prefixSearch) {
+		this(null, node, filter, prefixSearch);
+	}
+
 	/**
 	 *
 	 * @param tree
 	 * @param node
 	 * @param filter
-	 * @param prefixSearch if true will search for values where this node is the prefix
+	 * @param prefixSearch if true will search for values where this node is the prefix,
+	 *  otherwise iteration continues with keys following node
 	 */
 	public TerminatedNodeIterator(TernaryTree<V> tree, TernaryTreeNode<V> node, Predicate<TernaryTreeNode<V>> filter, boolean prefixSearch) {
+		this(tree, node, filter, prefixSearch, false);
+	}
+
+	/**
+	 * Iterate all terminated nodes of tree in ascending or descending key
+	 * order.  Iteration may be positioned using {@link #seek(String, boolean)}.
+	 *
+	 * @param tree
+	 * @param descending
+	 */
+	TerminatedNodeIterator(TernaryTree<V> tree, boolean descending) {
+		this(tree, tree.getRoot(), (n) -> true, false, descending);
+	}
+
+	private TerminatedNodeIterator(TernaryTree<V> tree, TernaryTreeNode<V> node, Predicate<TernaryTreeNode<V>> filter,
+			boolean prefixSearch, boolean descending) {
 		super();
 		this.tree = tree;
 		this.startNode = node;
 		this.filter = filter;
 		this.prefixSearch = prefixSearch;
-		this.currentBranch = Branch.Center;
-	}
-
-	private Branch getBranch(TernaryTreeNode<V> parent, TernaryTreeNode<V> child) {
-		if(parent == null)
-			return Branch.Undefined;
-		if(parent.getLeft() == child)
-			return Branch.Left;
-		if(parent.getCenter() == child)
-			return Branch.Center;
-		if(parent.getRight() == child)
-			return Branch.Right;
-		return null;
+		this.descending = descending;
 	}
 
 	public TernaryTreeNode<V> getStartNode() {
@@ -88,15 +153,39 @@ public class TerminatedNodeIterator<V> implements Iterator<TernaryTreeNode<V>> {
 
 	public void setStartNode(TernaryTreeNode<V> startNode) {
 		this.startNode = startNode;
+		invalidate();
 	}
 
 	public TernaryTreeNode<V> getCurrentNode() {
 		return this.currentNode;
 	}
 
+	/**
+	 * Continue iteration with keys following the given node
+	 *
+	 * @param currentNode
+	 */
 	public void setCurrentNode(TernaryTreeNode<V> currentNode) {
 		this.currentNode = currentNode;
-		this.currentBranch = Branch.Center;
+		invalidate();
+		if(currentNode != null) {
+			position(currentNode, true);
+			positioned = true;
+		}
+	}
+
+	/**
+	 * Returns the key of the node most recently returned by {@link #next()}.
+	 * The key is built incrementally during iteration and the contents of
+	 * the returned sequence are only valid until the next call to
+	 * {@link #hasNext()} or {@link #next()}.
+	 *
+	 * @return key of current node or <code>null</code> if there is no current node
+	 */
+	public CharSequence getCurrentKey() {
+		if(this.currentNode == null)
+			return null;
+		return (this.currentNode.isRoot() ? "" : keyBuffer);
 	}
 
 	public boolean isPrefixSearch() {
@@ -105,95 +194,333 @@ public class TerminatedNodeIterator<V> implements Iterator<TernaryTreeNode<V>> {
 
 	public void setPrefixSearch(boolean prefixSearch) {
 		this.prefixSearch = prefixSearch;
+		invalidate();
+	}
+
+	/**
+	 * Stop iteration at the first key which is not accepted by limit
+	 *
+	 * @param limit
+	 */
+	void setLimit(Predicate<CharSequence> limit) {
+		this.limit = limit;
+		lookahead = null;
+		hasLookahead = false;
+	}
+
+	/**
+	 * Position iterator before the first key following (or, when
+	 * descending, preceding) key using a single descent from the root.
+	 * The start node and prefix search settings are ignored.
+	 *
+	 * @param key
+	 * @param inclusive if <code>true</code> key itself will be returned
+	 *  if present
+	 */
+	void seek(String key, boolean inclusive) {
+		this.currentNode = null;
+		invalidate();
+		positioned = true;
+
+		TernaryTreeNode<V> node = tree.getRoot();
+		if(key.length() == 0) {
+			if(inclusive)
+				pendingRoot = node;
+			if(!descending)
+				push(node, ENTER);
+			return;
+		}
+		if(descending)
+			pendingRoot = node;
+		descend(node, key, 0, inclusive);
+	}
+
+	/*
+	 * Push nodes visited while descending from node towards key starting
+	 * at charIndex, see seek(String, boolean)
+	 */
+	private void descend(TernaryTreeNode<V> node, String key, int charIndex, boolean inclusive) {
+		while(node != null) {
+			final int cmp = tree.compareChars(key.charAt(charIndex), node.getChar());
+			if(cmp < 0) {
+				// node, center and right subtree follow key
+				if(!descending)
+					push(node, LEFT_DONE);
+				node = node.getLeft();
+			} else if(cmp > 0) {
+				// left subtree, node and center precede key
+				if(descending)
+					push(node, RIGHT_DONE);
+				node = node.getRight();
+			} else if(charIndex == key.length() - 1) {
+				if(descending) {
+					keyBuffer.push(node.getChar());
+					push(node, (inclusive ? CENTER_DONE : SELF_DONE));
+				} else if(inclusive) {
+					push(node, LEFT_DONE);
+				} else {
+					keyBuffer.push(node.getChar());
+					push(node, CENTER_DONE);
+					if(node.getCenter() != null)
+						push(node.getCenter(), ENTER);
+				}
+				return;
+			} else {
+				// node key is a prefix of key and precedes it
+				keyBuffer.push(node.getChar());
+				push(node, CENTER_DONE);
+				node = node.getCenter();
+				++charIndex;
+			}
+		}
 	}
 
 	public void reset() {
 		this.currentNode = null;
-		this.currentBranch = Branch.Center;
+		invalidate();
 	}
 
-	private NextNodeReturn nextNode() {
-		TernaryTreeNode<V> node = this.currentNode != null ? this.currentNode : this.startNode;
-		Branch branch = this.currentBranch;
+	private void invalidate() {
+		positioned = false;
+		lookahead = null;
+		hasLookahead = false;
+		canRemove = false;
+		pendingRoot = null;
+		depth = 0;
+		Arrays.fill(nodes, null);
+		keyBuffer.setLength(0);
+	}
 
-		if(this.currentNode == null && node == this.startNode && node.isTerminated()) {
-			return new NextNodeReturn(node, branch);
+	private void push(TernaryTreeNode<V> node, byte state) {
+		if(depth == nodes.length) {
+			nodes = Arrays.copyOf(nodes, depth * 2);
+			states = Arrays.copyOf(states, depth * 2);
 		}
-		boolean loopCnd = true;
-		do {
-			switch(branch) {
-				case Left:
-					if(node.getLeft() != null) {
-						node = node.getLeft();
-						continue;
-					} else if(node.isTerminated() && filter.test(node)) {
-						return new NextNodeReturn(node, branch.nextBranch());
-					}
-
-				case Center:
-					if(node.getCenter() != null) {
-						branch = Branch.Left;
-						node = node.getCenter();
-						continue;
-					}
-
-				case Right:
-					if(this.prefixSearch && node == this.startNode) {
-						return null;
-					}
-					if(node.getRight() != null) {
-						branch = Branch.Left;
-						node = node.getRight();
-						continue;
-					}
+		nodes[depth] = node;
+		states[depth] = state;
+		++depth;
+	}
+
+	/**
+	 * Build stack of ancestors for the given node.  Ancestors reached from
+	 * their right child are complete and not added to the stack.
+	 *
+	 * @param node
+	 * @param afterNode if <code>true</code> iteration continues after node,
+	 *  otherwise node is the first node examined
+	 */
+	private void position(TernaryTreeNode<V> node, boolean afterNode) {
+		depth = 0;
+		keyBuffer.setLength(0);
+		if(node == null) return;
+
+		final List<TernaryTreeNode<V>> path = new ArrayList<>();
+		for(TernaryTreeNode<V> n = node; n != null; n = n.getParent()) {
+			path.add(n);
+			if(prefixSearch && n == startNode) break;
+		}
+		// key of the path leading to the start node when not iterating from the root
+		final TernaryTreeNode<V> top = path.get(path.size() - 1);
+		if(!top.isRoot()) {
+			final String prefix = top.getPrefix();
+			keyBuffer.append(prefix.subSequence(0, prefix.length() - 1));
+		}
+		for(int i = path.size() - 1; i > 0; i--) {
+			final TernaryTreeNode<V> parent = path.get(i);
+			final TernaryTreeNode<V> child = path.get(i - 1);
+			if(parent.getLeft() == child) {
+				push(parent, LEFT_DONE);
+			} else if(parent.getCenter() == child) {
+				keyBuffer.push(parent.getChar());
+				push(parent, CENTER_DONE);
+			} else if(parent.getRight() != child) {
+				// node has been removed from the tree
+				throw new ConcurrentModificationException();
 			}
-			if(!node.isRoot()) {
-				Branch childBranch = getBranch(node.getParent(), node);
-				if (childBranch == Branch.Left && node.getParent().isTerminated() && filter.test(node.getParent())) {
-					this.currentBranch = childBranch.nextBranch();
-					return new NextNodeReturn(node.getParent(), childBranch.nextBranch());
-				}
-				node = node.getParent();
-				branch = childBranch.nextBranch();
-			} else {
-				branch = Branch.Undefined;
+		}
+
+		if(node.isRoot()) {
+			if(!afterNode)
+				pendingRoot = node;
+			push(node, ENTER);
+		} else if(afterNode) {
+			keyBuffer.push(node.getChar());
+			push(node, CENTER_DONE);
+			if(node.getCenter() != null)
+				push(node.getCenter(), ENTER);
+		} else {
+			// the left subtree of the start node precedes its key
+			push(node, LEFT_DONE);
+		}
+	}
+
+	/**
+	 * Locate next terminated node accepted by the filter
+	 *
+	 * @return next node or <code>null</code>
+	 */
+	private TernaryTreeNode<V> advance() {
+		final TernaryTreeNode<V> retVal = (descending ? advanceDescending() : advanceAscending());
+		if(retVal != null && limit != null && !limit.test(retVal.isRoot() ? "" : keyBuffer)) {
+			depth = 0;
+			Arrays.fill(nodes, null);
+			pendingRoot = null;
+			return null;
+		}
+		return retVal;
+	}
+
+	@SuppressWarnings("unchecked")
+	private TernaryTreeNode<V> advanceAscending() {
+		final TernaryTreeNode<V> root = pollPendingRoot();
+		if(root != null)
+			return root;
+		while(depth > 0) {
+			final TernaryTreeNode<V> node = (TernaryTreeNode<V>)nodes[depth - 1];
+			switch(states[depth - 1]) {
+				case ENTER:
+					states[depth - 1] = LEFT_DONE;
+					if(node.getLeft() != null)
+						push(node.getLeft(), ENTER);
+					break;
+
+				case LEFT_DONE:
+					states[depth - 1] = CENTER_DONE;
+					keyBuffer.push(node.getChar());
+					if(node.getCenter() != null)
+						push(node.getCenter(), ENTER);
+					if(!node.isRoot() && node.isTerminated() && filter.test(node))
+						return node;
+					break;
+
+				default:
+					keyBuffer.pop();
+					nodes[--depth] = null;
+					// right subtree replaces node on the stack
+					if(node.getRight() != null && !(prefixSearch && node == startNode && !node.isRoot()))
+						push(node.getRight(), ENTER);
+					break;
 			}
+		}
+		return null;
+	}
 
-			if(this.prefixSearch) {
-				loopCnd = !(node == this.startNode && branch == Branch.Right);
-			} else {
-				loopCnd = !(node == tree.getRoot() && branch == Branch.Undefined);
+	@SuppressWarnings("unchecked")
+	private TernaryTreeNode<V> advanceDescending() {
+		while(depth > 0) {
+			final TernaryTreeNode<V> node = (TernaryTreeNode<V>)nodes[depth - 1];
+			switch(states[depth - 1]) {
+				case ENTER:
+					states[depth - 1] = RIGHT_DONE;
+					if(node.getRight() != null)
+						push(node.getRight(), ENTER);
+					break;
+
+				case RIGHT_DONE:
+					states[depth - 1] = CENTER_DONE;
+					keyBuffer.push(node.getChar());
+					if(node.getCenter() != null)
+						push(node.getCenter(), ENTER);
+					break;
+
+				case CENTER_DONE:
+					states[depth - 1] = SELF_DONE;
+					if(!node.isRoot() && node.isTerminated() && filter.test(node))
+						return node;
+					break;
+
+				default:
+					keyBuffer.pop();
+					nodes[--depth] = null;
+					// left subtree replaces node on the stack
+					if(node.getLeft() != null)
+						push(node.getLeft(), ENTER);
+					break;
 			}
-		} while(loopCnd);
+		}
+		return pollPendingRoot();
+	}
 
-		return null;
+	private TernaryTreeNode<V> pollPendingRoot() {
+		final TernaryTreeNode<V> root = pendingRoot;
+		pendingRoot = null;
+		return (root != null && root.isTerminated() && filter.test(root) ? root : null);
 	}
 
 	@Override
 	public boolean hasNext() {
-		final NextNodeReturn nextNode = nextNode();
-		return nextNode != null;
+		if(!hasLookahead) {
+			if(!positioned) {
+				if(descending) {
+					pendingRoot = (startNode.isRoot() ? startNode : null);
+					push(startNode, ENTER);
+				} else
+					position(currentNode != null ? currentNode : startNode, currentNode != null);
+				positioned = true;
+			}
+			lookahead = advance();
+			hasLookahead = true;
+		}
+		return lookahead != null;
 	}
 
 	@Override
 	public TernaryTreeNode<V> next() {
-		final NextNodeReturn nextNode = nextNode();
-		if(nextNode != null) {
-			this.currentNode = nextNode.nextNode;
-			this.currentBranch = nextNode.nextBranch;
-		} else {
-			this.currentNode = null;
-			this.currentBranch = Branch.Undefined;
-		}
+		if(!hasNext())
+			throw new NoSuchElementException();
+		this.currentNode = lookahead;
+		lookahead = null;
+		hasLookahead = false;
+		canRemove = true;
 		return this.currentNode;
 	}
 
-	private class NextNodeReturn {
-		TernaryTreeNode<V> nextNode;
-		Branch nextBranch;
-		public NextNodeReturn(TernaryTreeNode<V> nextNode, Branch nextBranch) {
-			this.nextNode = nextNode;
-			this.nextBranch = nextBranch;
+	/**
+	 * Remove the value of the node most recently returned by {@link #next()}
+	 * from the tree.
+	 */
+	@Override
+	public void remove() {
+		if(tree == null)
+			throw new UnsupportedOperationException();
+		if(!canRemove)
+			throw new IllegalStateException();
+		final String key = currentNode.getPrefix();
+		tree.removeIteratorNode(currentNode);
+		canRemove = false;
+		if(!currentNode.isRoot())
+			reposition(key);
+	}
+
+	private static boolean isLinked(TernaryTreeNode<?> node) {
+		final TernaryTreeNode<?> parent = node.getParent();
+		return parent.getLeft() == node || parent.getCenter() == node || parent.getRight() == node;
+	}
+
+	/*
+	 * Rebuild the stack to continue after key.  Removing a node unlinks
+	 * nodes which are no longer needed and nodes on the stack may have
+	 * been unlinked or moved.
+	 */
+	private void reposition(String key) {
+		lookahead = null;
+		hasLookahead = false;
+		depth = 0;
+		Arrays.fill(nodes, null);
+		keyBuffer.setLength(0);
+		if(!prefixSearch || startNode.isRoot()) {
+			if(descending)
+				pendingRoot = tree.getRoot();
+			descend(tree.getRoot(), key, 0, false);
+		} else if(isLinked(startNode)) {
+			// no keys remain with prefix if start node was unlinked
+			final String prefix = startNode.getPrefix();
+			keyBuffer.append(prefix);
+			push(startNode, CENTER_DONE);
+			if(key.length() > prefix.length())
+				descend(startNode.getCenter(), key, prefix.length(), false);
+			else if(startNode.getCenter() != null)
+				push(startNode.getCenter(), ENTER);
 		}
 	}
 
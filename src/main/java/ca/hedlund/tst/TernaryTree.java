@@ -17,9 +17,20 @@ package ca.hedlund.tst;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ca.hedlund.tst.TernaryTreeNode.Position;
 
@@ -27,26 +38,84 @@ import ca.hedlund.tst.TernaryTreeNode.Position;
  * <p>Ternary search tree implementation.  This implementation is thread safe, however
  * the default {@link Map} methods are not synchronized.  To obtain a synchronized
  * version of this {@link Map}, use {@link Collections#synchronizedMap(Map)}.</p>
+ *
+ * <p>Lookups and traversals share a read lock and do not block each other, only
+ * insertions, removals and value updates are serialized.</p>
+ *
+ * <p>Keys are ordered by comparing chars using the tree's {@link Comparator},
+ * navigation methods locate keys with a single descent and range views
+ * only visit nodes within their range.</p>
  */
-public class TernaryTree<V> implements Map<String, V>, Serializable {
+public class TernaryTree<V> implements NavigableMap<String, V>, Serializable {
 
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 	
 	/**
-	 * Root
+	 * Root, serialized using {@link TernaryTreeCodec}
 	 */
-	private TernaryTreeNode<V> root = new TernaryTreeEmptyStringNode<V>(null);
+	private transient TernaryTreeNode<V> root;
 	
 	/**
-	 * re-entrant lock
+	 * re-entrant read/write lock, lookups and traversals share the read
+	 * lock while structural changes and value updates take the write lock
 	 */
-	private final Lock lock = new ReentrantLock();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
 	
 	/**
 	 * Collator
 	 */
 	private final Comparator<Character> comparator;
 
+	/**
+	 * Number of terminated nodes (i.e., entries) in the tree, only written
+	 * while holding the write lock and read without locking
+	 */
+	private transient volatile int size = 0;
+
+	/**
+	 * Maintain an index of reversed keys for suffix queries
+	 */
+	private boolean suffixIndexEnabled = false;
+
+	/**
+	 * Index of reversed keys to nodes, <code>null</code> if disabled
+	 */
+	private transient TernaryTree<TernaryTreeNode<V>> suffixIndex;
+
+	/**
+	 * Length of grams in infix index
+	 */
+	private static final int GRAM_LENGTH = 3;
+
+	/**
+	 * Maintain an index of key q-grams for infix queries
+	 */
+	private boolean infixIndexEnabled = false;
+
+	/**
+	 * Index of lower case key q-grams to nodes, <code>null</code> if disabled
+	 */
+	private transient TernaryTree<Set<TernaryTreeNode<V>>> infixIndex;
+
+	/**
+	 * Maintain an index of case-folded keys for case-insensitive queries
+	 */
+	private boolean caseFoldedIndexEnabled = false;
+
+	/**
+	 * Index of lower case keys to nodes, <code>null</code> if disabled
+	 */
+	private transient TernaryTree<Set<TernaryTreeNode<V>>> caseFoldedIndex;
+
+	/*
+	 * Cached views
+	 */
+	private transient Set<String> keySet;
+
+	private transient Collection<V> values;
+
+	private transient Set<Map.Entry<String, V>> entrySet;
+
 	public TernaryTree() {
 		this(null);
 	}
@@ -54,20 +123,438 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	public TernaryTree(Comparator<Character> comparator) {
 		super();
 		this.comparator = comparator;
+		this.root = createRoot();
 	}
 	
 	public TernaryTreeNode<V> getRoot() {
 		return root;
 	}
-	
+
+	/**
+	 * Comparator used for node chars, <code>null</code> if natural
+	 * ordering is used
+	 *
+	 * @return comparator
+	 */
+	public Comparator<Character> getComparator() {
+		return comparator;
+	}
+
+	/**
+	 * Create the root node, called during construction and when the tree
+	 * is cleared.  Subclasses using their own node type must override this
+	 * method and {@link #createNode(TernaryTreeNode, char)}.
+	 *
+	 * @return root node representing the empty string
+	 */
+	protected TernaryTreeNode<V> createRoot() {
+		return new TernaryTreeEmptyStringNode<V>(null);
+	}
+
+	/**
+	 * Create a new node
+	 *
+	 * @param parent
+	 * @param ch
+	 * @return node
+	 */
+	protected TernaryTreeNode<V> createNode(TernaryTreeNode<V> parent, char ch) {
+		return new TernaryTreeNode<V>(parent, ch);
+	}
+
+	/**
+	 * Called while holding the write lock after the value or children
+	 * of node have changed.  Default implementation does nothing.
+	 *
+	 * @param node
+	 */
+	protected void nodeChanged(TernaryTreeNode<V> node) {
+	}
+
+	/**
+	 * Called while holding the write lock after any node in the subtree
+	 * rooted at node may have changed.  After deserialization this is called
+	 * for the root once all fields are restored.  Default implementation
+	 * does nothing.
+	 *
+	 * @param node
+	 */
+	protected void subtreeChanged(TernaryTreeNode<V> node) {
+	}
+
+	ReadWriteLock getLock() {
+		return lock;
+	}
+
+	/**
+	 * Write a read-only snapshot of this tree which can be opened using
+	 * {@link TernaryTreeSnapshot#open(java.nio.file.Path, TernaryTreeValueSerializer, Comparator)}
+	 *
+	 * @param file
+	 * @param serializer
+	 * @throws IOException
+	 */
+	public void writeSnapshot(java.nio.file.Path file, TernaryTreeValueSerializer<V> serializer) throws IOException {
+		lock.readLock().lock();
+		try {
+			TernaryTreeSnapshot.write(root, comparator, file, serializer);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Write tree contents to the given stream.  The stream is not closed.
+	 *
+	 * @param out
+	 * @param serializer
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out, TernaryTreeValueSerializer<V> serializer) throws IOException {
+		final DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+		lock.readLock().lock();
+		try {
+			new TernaryTreeCodec<V>(serializer).write(dout, root, size);
+		} finally {
+			lock.readLock().unlock();
+		}
+		dout.flush();
+	}
+
+	/**
+	 * Read tree written using {@link #writeTo(OutputStream, TernaryTreeValueSerializer)}
+	 *
+	 * @param in
+	 * @param serializer
+	 * @return tree
+	 * @throws IOException
+	 */
+	public static <V> TernaryTree<V> readFrom(InputStream in, TernaryTreeValueSerializer<V> serializer) throws IOException {
+		return readFrom(in, serializer, null);
+	}
+
+	/**
+	 * Read tree written using {@link #writeTo(OutputStream, TernaryTreeValueSerializer)}
+	 *
+	 * @param in
+	 * @param serializer
+	 * @param comparator comparator used by the tree when written
+	 * @return tree
+	 * @throws IOException
+	 */
+	public static <V> TernaryTree<V> readFrom(InputStream in, TernaryTreeValueSerializer<V> serializer,
+			Comparator<Character> comparator) throws IOException {
+		final TernaryTree<V> retVal = new TernaryTree<>(comparator);
+		retVal.size = new TernaryTreeCodec<V>(serializer).read(new DataInputStream(in), retVal.root, retVal::createNode);
+		return retVal;
+	}
+
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		lock.readLock().lock();
+		try {
+			oos.defaultWriteObject();
+			new TernaryTreeCodec<V>(new ObjectStreamValueSerializer<V>()).write(oos, root, size);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		ois.defaultReadObject();
+		root = createRoot();
+		size = new TernaryTreeCodec<V>(new ObjectStreamValueSerializer<V>()).read(ois, root, this::createNode);
+		// subclass fields are restored after this method returns
+		ois.registerValidation(() -> {
+			lock.writeLock().lock();
+			try {
+				subtreeChanged(root);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}, 0);
+		if(suffixIndexEnabled)
+			buildSuffixIndex();
+		if(infixIndexEnabled)
+			buildInfixIndex();
+		if(caseFoldedIndexEnabled)
+			buildCaseFoldedIndex();
+	}
+
+	/**
+	 * Enable or disable the suffix index.  When enabled an index of reversed
+	 * keys is maintained alongside the tree and case-sensitive suffix queries
+	 * ({@link #keysEndingWith(String)}, {@link #valuesForKeysEndingWith(String)}
+	 * and {@link #entriesForKeysEndingWith(String)}) are answered using a prefix
+	 * search of the index instead of visiting the entire tree.  If the case-folded
+	 * index is enabled case-insensitive suffix queries are also indexed.
+	 *
+	 * @param enabled
+	 */
+	public void setSuffixIndexEnabled(boolean enabled) {
+		lock.writeLock().lock();
+		try {
+			suffixIndexEnabled = enabled;
+			if(enabled && suffixIndex == null)
+				buildSuffixIndex();
+			else if(!enabled)
+				suffixIndex = null;
+			if(caseFoldedIndex != null)
+				caseFoldedIndex.setSuffixIndexEnabled(enabled);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean isSuffixIndexEnabled() {
+		return suffixIndexEnabled;
+	}
+
+	/*
+	 * Build suffix index from tree contents, must hold write lock
+	 */
+	private void buildSuffixIndex() {
+		final List<Map.Entry<String, TernaryTreeNode<V>>> entries = new ArrayList<>();
+		final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(this);
+		while(itr.hasNext()) {
+			final TernaryTreeNode<V> node = itr.next();
+			entries.add(new AbstractMap.SimpleImmutableEntry<>(reverse(itr.getCurrentKey()), node));
+		}
+		suffixIndex = new TernaryTree<>(comparator);
+		suffixIndex.bulkLoad(entries.iterator());
+	}
+
+	/**
+	 * Enable or disable the infix index.  When enabled the lower case
+	 * q-grams of each key are indexed and infix queries
+	 * ({@link #keysContaining(String)}, {@link #valuesForKeysContaining(String)}
+	 * and {@link #entriesForKeysContaining(String)}) only check keys sharing
+	 * all q-grams of the infix instead of visiting the entire tree.
+	 *
+	 * @param enabled
+	 */
+	public void setInfixIndexEnabled(boolean enabled) {
+		lock.writeLock().lock();
+		try {
+			infixIndexEnabled = enabled;
+			if(enabled && infixIndex == null)
+				buildInfixIndex();
+			else if(!enabled)
+				infixIndex = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean isInfixIndexEnabled() {
+		return infixIndexEnabled;
+	}
+
+	/*
+	 * Build infix index from tree contents, must hold write lock
+	 */
+	private void buildInfixIndex() {
+		final Map<String, Set<TernaryTreeNode<V>>> postings = new HashMap<>();
+		final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(this);
+		while(itr.hasNext()) {
+			final TernaryTreeNode<V> node = itr.next();
+			for(String gram:grams(itr.getCurrentKey())) {
+				postings.computeIfAbsent(gram, (g) -> new HashSet<>()).add(node);
+			}
+		}
+		infixIndex = new TernaryTree<>();
+		infixIndex.bulkLoad(postings.entrySet().iterator());
+	}
+
+	/**
+	 * Enable or disable the case-folded index.  When enabled an index of
+	 * lower case keys is maintained alongside the tree and case-insensitive
+	 * lookups ({@link #get(Object, boolean)}, {@link #containsKey(Object, boolean)},
+	 * {@link #keysWithPrefix(String, boolean)} and, with the suffix index,
+	 * {@link #keysEndingWith(String, boolean)}) are answered by a single
+	 * search of the index.
+	 *
+	 * @param enabled
+	 */
+	public void setCaseFoldedIndexEnabled(boolean enabled) {
+		lock.writeLock().lock();
+		try {
+			caseFoldedIndexEnabled = enabled;
+			if(enabled && caseFoldedIndex == null)
+				buildCaseFoldedIndex();
+			else if(!enabled)
+				caseFoldedIndex = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean isCaseFoldedIndexEnabled() {
+		return caseFoldedIndexEnabled;
+	}
+
+	/*
+	 * Build case-folded index from tree contents, must hold write lock
+	 */
+	private void buildCaseFoldedIndex() {
+		final Map<String, Set<TernaryTreeNode<V>>> postings = new HashMap<>();
+		final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(this);
+		while(itr.hasNext()) {
+			final TernaryTreeNode<V> node = itr.next();
+			postings.computeIfAbsent(lowerCase(itr.getCurrentKey()), (k) -> new HashSet<>()).add(node);
+		}
+		caseFoldedIndex = new TernaryTree<>(comparator);
+		caseFoldedIndex.bulkLoad(postings.entrySet().iterator());
+		if(suffixIndexEnabled)
+			caseFoldedIndex.setSuffixIndexEnabled(true);
+	}
+
+	/*
+	 * Lower case grams of key.  Grams starting in the last GRAM_LENGTH-1
+	 * positions are shorter so that every position of the key starts a
+	 * gram, allowing infixes shorter than GRAM_LENGTH to be found using
+	 * a prefix search of the index.
+	 */
+	private static Set<String> grams(CharSequence key) {
+		final String lowerKey = lowerCase(key);
+		final Set<String> retVal = new HashSet<>();
+		for(int i = 0; i < lowerKey.length(); i++)
+			retVal.add(lowerKey.substring(i, Math.min(i + GRAM_LENGTH, lowerKey.length())));
+		return retVal;
+	}
+
+	/*
+	 * Lower case each char, unlike String#toLowerCase the length is unchanged
+	 */
+	private static String lowerCase(CharSequence seq) {
+		final char[] chars = new char[seq.length()];
+		for(int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(seq.charAt(i));
+		return new String(chars);
+	}
+
+	/*
+	 * Visit terminated nodes with keys containing infix in key order using
+	 * the infix index.
+	 *
+	 * @return false if the index cannot be used for the query
+	 */
+	private boolean visitInfixIndex(String infix, boolean caseSensitive, TernaryTreeKeyVisitor<V> visitor) {
+		lock.readLock().lock();
+		try {
+			final TernaryTree<Set<TernaryTreeNode<V>>> index = infixIndex;
+			if(index == null) return false;
+			if(infix.length() == 0) return true;
+
+			final Set<TernaryTreeNode<V>> candidates = new HashSet<>();
+			final String lowerInfix = lowerCase(infix);
+			if(lowerInfix.length() < GRAM_LENGTH) {
+				for(Set<TernaryTreeNode<V>> posting:index.valuesWithPrefix(lowerInfix))
+					candidates.addAll(posting);
+			} else {
+				final List<Set<TernaryTreeNode<V>>> postings = new ArrayList<>();
+				for(int i = 0; i + GRAM_LENGTH <= lowerInfix.length(); i++) {
+					final Set<TernaryTreeNode<V>> posting = index.get(lowerInfix.substring(i, i + GRAM_LENGTH));
+					if(posting == null) return true;
+					postings.add(posting);
+				}
+				postings.sort( (p1, p2) -> Integer.compare(p1.size(), p2.size()) );
+				candidates.addAll(postings.get(0));
+				for(int i = 1; i < postings.size() && !candidates.isEmpty(); i++)
+					candidates.retainAll(postings.get(i));
+			}
+
+			final List<Map.Entry<String, TernaryTreeNode<V>>> matches = new ArrayList<>();
+			for(TernaryTreeNode<V> node:candidates) {
+				final String key = node.getPrefix();
+				if(TernaryTreeKeyBuffer.contains(key, infix, caseSensitive))
+					matches.add(new AbstractMap.SimpleImmutableEntry<>(key, node));
+			}
+			matches.sort( (e1, e2) -> compareKeys(e1.getKey(), e2.getKey()) );
+			for(Map.Entry<String, TernaryTreeNode<V>> match:matches) {
+				visitor.visit(match.getValue(), match.getKey());
+			}
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static String reverse(CharSequence seq) {
+		final char[] chars = new char[seq.length()];
+		for(int i = 0; i < chars.length; i++)
+			chars[i] = seq.charAt(chars.length - 1 - i);
+		return new String(chars);
+	}
+
+	/*
+	 * Visit terminated nodes with keys ending with suffix in key order using
+	 * the suffix index.
+	 *
+	 * @return false if the index cannot be used for the query
+	 */
+	private boolean visitSuffixIndex(String suffix, boolean caseSensitive, TernaryTreeKeyVisitor<V> visitor) {
+		lock.readLock().lock();
+		try {
+			final List<Map.Entry<String, TernaryTreeNode<V>>> matches = new ArrayList<>();
+			if(caseSensitive) {
+				final TernaryTree<TernaryTreeNode<V>> index = suffixIndex;
+				if(index == null) return false;
+				if(suffix.length() == 0) return true;
+
+				for(Map.Entry<String, TernaryTreeNode<V>> entry:index.entriesWithPrefix(reverse(suffix))) {
+					matches.add(new AbstractMap.SimpleImmutableEntry<>(reverse(entry.getKey()), entry.getValue()));
+				}
+			} else {
+				// suffix index of the case-folded index
+				final TernaryTree<Set<TernaryTreeNode<V>>> foldedIndex = caseFoldedIndex;
+				if(foldedIndex == null || foldedIndex.suffixIndex == null) return false;
+				if(suffix.length() == 0) return true;
+
+				for(TernaryTreeNode<Set<TernaryTreeNode<V>>> foldedNode:foldedIndex.suffixIndex.valuesWithPrefix(reverse(lowerCase(suffix)))) {
+					for(TernaryTreeNode<V> node:foldedNode.getValue())
+						matches.add(new AbstractMap.SimpleImmutableEntry<>(node.getPrefix(), node));
+				}
+			}
+			matches.sort( (e1, e2) -> compareKeys(e1.getKey(), e2.getKey()) );
+			for(Map.Entry<String, TernaryTreeNode<V>> match:matches) {
+				visitor.visit(match.getValue(), match.getKey());
+			}
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Value serializer used for java serialization
+	 */
+	static class ObjectStreamValueSerializer<V> implements TernaryTreeValueSerializer<V> {
+
+		@Override
+		public void write(DataOutput out, V value) throws IOException {
+			((ObjectOutput)out).writeObject(value);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V read(DataInput in) throws IOException {
+			try {
+				return (V)((ObjectInput)in).readObject();
+			} catch (ClassNotFoundException e) {
+				throw new InvalidClassException(e.getMessage());
+			}
+		}
+
+	}
+
 	@Override
 	public int size() {
-		return keySet().size();
+		return size;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return values().isEmpty();
+		return size == 0;
 	}
 	
 	@Override
@@ -76,7 +563,11 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	}
 
 	public boolean containsKey(Object key, boolean caseSensitive) {
-		final Optional<TernaryTreeNode<V>> node = findNode(key.toString(), caseSensitive, false);
+		if(caseSensitive) {
+			final TernaryTreeNode<V> node = lookupNode(key.toString(), false);
+			return node != null && node.isTerminated();
+		}
+		final Optional<TernaryTreeNode<V>> node = findNode(key.toString(), false, false);
 		return node.isPresent() && node.get().isTerminated();
 	}
 
@@ -87,130 +578,999 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 
 	@Override
 	public V get(Object key) {
-		final Optional<TernaryTreeNode<V>> node = findNode(key.toString(), true, false);
+		return get(key, true);
+	}
+
+	/**
+	 * Returns the value for key.  If not case sensitive and several keys
+	 * differ only by case the value for the key matching exactly is preferred,
+	 * otherwise the first matching key in key order.
+	 *
+	 * @param key
+	 * @param caseSensitive
+	 * @return value for key or <code>null</code>
+	 */
+	public V get(Object key, boolean caseSensitive) {
+		if(caseSensitive) {
+			final TernaryTreeNode<V> node = lookupNode(key.toString(), false);
+			return node != null ? node.getValue() : null;
+		}
+		final Optional<TernaryTreeNode<V>> node = findNode(key.toString(), false, false);
 		return node.isPresent() ? node.get().getValue() : null;
 	}
 
 	@Override
 	public V put(String key, V value) {
-		final Optional<TernaryTreeNode<V>> node = findNode(key, true, true);
-		return node.get().setValue(value);
+		if(value == null) return remove(key);
+		lock.writeLock().lock();
+		try {
+			return setNodeValue(lookupNode(key, true), value);
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 
 	@Override
 	public V remove(Object key) {
-		final Optional<TernaryTreeNode<V>> node = findNode(key.toString(), true, false);
-		final V retVal = node.isPresent() ? node.get().getValue() : null;
-		if(node.isPresent()) node.get().setValue(null);
-		return retVal;
+		lock.writeLock().lock();
+		try {
+			final TernaryTreeNode<V> node = lookupNode(key.toString(), false);
+			return node != null ? removeNode(node) : null;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 
+	/*
+	 * The following operations find the node for key once and are atomic,
+	 * functions are called while holding the write lock and must not
+	 * modify the tree.
+	 */
+
 	@Override
-	public void putAll(Map<? extends String, ? extends V> m) {
-		for(String key:m.keySet()) {
-			put(key, m.get(key));
+	public V putIfAbsent(String key, V value) {
+		if(value == null) return get(key);
+		lock.writeLock().lock();
+		try {
+			final TernaryTreeNode<V> node = lookupNode(key, true);
+			final V oldVal = node.getValue();
+			if(oldVal == null)
+				setNodeValue(node, value);
+			return oldVal;
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 
 	@Override
-	public void clear() {
-		root = null;
+	public V computeIfAbsent(String key, Function<? super String, ? extends V> mappingFunction) {
+		Objects.requireNonNull(mappingFunction);
+		lock.writeLock().lock();
+		try {
+			final TernaryTreeNode<V> node = lookupNode(key, true);
+			V value = node.getValue();
+			if(value == null) {
+				try {
+					value = mappingFunction.apply(key);
+				} finally {
+					// unlink nodes created for key
+					if(value == null)
+						prune(node);
+				}
+				if(value != null)
+					setNodeValue(node, value);
+			}
+			return value;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 
 	@Override
-	public Set<String> keySet() {
-		final AccumulatingNodeVisitor<V> visitor = new AccumulatingNodeVisitor<>();
-		lock.lock();
-		final TernaryTreeNode<V> root = getRoot();
-		if(root != null)
-			root.acceptVisitMiddle(visitor);
-		lock.unlock();
-		
-		LinkedHashSet<String> retVal = new LinkedHashSet<>();
-		visitor.nodeSet.stream()
-					.map( node -> node.getPrefix() )
-					.forEach(retVal::add);
-		return retVal;
+	public V computeIfPresent(String key, BiFunction<? super String, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
+		lock.writeLock().lock();
+		try {
+			final TernaryTreeNode<V> node = lookupNode(key, false);
+			if(node == null || node.getValue() == null) return null;
+			final V newVal = remappingFunction.apply(key, node.getValue());
+			if(newVal == null)
+				removeNode(node);
+			else
+				setNodeValue(node, newVal);
+			return newVal;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 
 	@Override
-	public Collection<V> values() {
-		final AccumulatingNodeVisitor<V> visitor = new AccumulatingNodeVisitor<>();
-		lock.lock();
-		final TernaryTreeNode<V> root = getRoot();
-		if(root != null)
-			root.acceptVisitMiddle(visitor);
-		lock.unlock();
-		
-		ArrayList<V> values = new ArrayList<>();
-		visitor.nodeSet.stream()
-				.map( node -> node.getValue() )
-				.forEach(values::add);
-		return values;
+	public V compute(String key, BiFunction<? super String, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(remappingFunction);
+		lock.writeLock().lock();
+		try {
+			final TernaryTreeNode<V> node = lookupNode(key, true);
+			final V oldVal = node.getValue();
+			V newVal = null;
+			try {
+				newVal = remappingFunction.apply(key, oldVal);
+			} finally {
+				if(oldVal == null && newVal == null)
+					prune(node);
+			}
+			if(newVal != null)
+				setNodeValue(node, newVal);
+			else if(oldVal != null)
+				removeNode(node);
+			return newVal;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 
 	@Override
-	public Set<java.util.Map.Entry<String, V>> entrySet() {
-		final AccumulatingNodeVisitor<V> visitor = new AccumulatingNodeVisitor<>();
-		lock.lock();
-		final TernaryTreeNode<V> root = getRoot();
-		if(root != null)
-			root.acceptVisitMiddle(visitor);
-		lock.unlock();
-		
-		LinkedHashSet<java.util.Map.Entry<String, V>> retVal = new LinkedHashSet<>();
-		visitor.nodeSet.stream()
-				.map( node -> {
-					return new Entry(node.getPrefix(), node.getValue());
-				})
-				.forEach(retVal::add);
-		return retVal;
+	public V merge(String key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		Objects.requireNonNull(value);
+		Objects.requireNonNull(remappingFunction);
+		lock.writeLock().lock();
+		try {
+			final TernaryTreeNode<V> node = lookupNode(key, true);
+			final V oldVal = node.getValue();
+			final V newVal = (oldVal == null ? value : remappingFunction.apply(oldVal, value));
+			if(newVal == null)
+				removeNode(node);
+			else
+				setNodeValue(node, newVal);
+			return newVal;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
-	
-	public Set<String> keysWithPrefix(String prefix) {
-		return keysWithPrefix(prefix, true);
+
+	@Override
+	public void putAll(Map<? extends String, ? extends V> m) {
+		bulkLoad(m.entrySet().iterator());
 	}
-	
-	public Set<String> keysWithPrefix(String prefix, boolean caseSensitive) {
-		final AccumulatingNodeVisitor<V> visitor = new AccumulatingNodeVisitor<>();
-		final Optional<TernaryTreeNode<V>> nodeOpt = findNode(prefix, caseSensitive, false);
-		lock.lock();
-		if(nodeOpt.isPresent()) {
-			final TernaryTreeNode<V> node = nodeOpt.get();
-			if(node.isTerminated())
-				visitor.nodeSet.add(node);
-			if(node.getCenter() != null)
-				node.getCenter().acceptVisitMiddle(visitor);
+
+	/**
+	 * Insert all entries using a single write lock.  Entries are sorted
+	 * (if necessary) and inserted medians first for each char position
+	 * producing a balanced tree regardless of input order.  If the tree is
+	 * empty nodes are built directly without searching the tree.
+	 *
+	 * As with {@link #put(String, Object)} later values replace earlier
+	 * values for the same key and <code>null</code> values remove keys.
+	 *
+	 * @param entries
+	 */
+	@SuppressWarnings("unchecked")
+	public void bulkLoad(Iterator<? extends Map.Entry<? extends String, ? extends V>> entries) {
+		final List<Map.Entry<String, V>> list = new ArrayList<>();
+		boolean sorted = true;
+		String prevKey = null;
+		while(entries.hasNext()) {
+			final Map.Entry<? extends String, ? extends V> entry = entries.next();
+			final String key = entry.getKey();
+			if(prevKey != null && compareKeys(prevKey, key) > 0)
+				sorted = false;
+			list.add(new AbstractMap.SimpleImmutableEntry<String, V>(key, entry.getValue()));
+			prevKey = key;
+		}
+		if(!sorted)
+			list.sort((e1, e2) -> compareKeys(e1.getKey(), e2.getKey()));
+
+		// sort is stable, keep the last value for each key
+		final String[] keys = new String[list.size()];
+		final Object[] vals = new Object[list.size()];
+		int n = 0;
+		for(Map.Entry<String, V> entry:list) {
+			if(n > 0 && compareKeys(keys[n-1], entry.getKey()) == 0)
+				--n;
+			keys[n] = entry.getKey();
+			vals[n] = entry.getValue();
+			++n;
+		}
+
+		lock.writeLock().lock();
+		try {
+			if(root.getLeft() == null && root.getCenter() == null && root.getRight() == null) {
+				buildBalanced(keys, (V[])vals, n);
+				subtreeChanged(root);
+			}
+			else
+				insertBalanced(keys, (V[])vals, 0, n);
+		} finally {
+			lock.writeLock().unlock();
 		}
-		lock.unlock();
-		
-		LinkedHashSet<String> retVal = new LinkedHashSet<>();
-		visitor.nodeSet.stream()
-				.map( n -> n.getPrefix() )
-				.forEach(retVal::add);
-		return retVal;
 	}
-	
-	public Collection<V> valuesWithPrefix(String prefix) {
-		return valuesWithPrefix(prefix, true);
+
+	/*
+	 * Insert keys in median first order, must hold write lock
+	 */
+	private void insertBalanced(String[] keys, V[] vals, int from, int to) {
+		final Deque<int[]> ranges = new ArrayDeque<>();
+		ranges.add(new int[] { from, to });
+		while(!ranges.isEmpty()) {
+			final int[] range = ranges.poll();
+			if(range[0] >= range[1]) continue;
+			final int mid = (range[0] + range[1]) >>> 1;
+			final Optional<TernaryTreeNode<V>> node = findNode(keys[mid], true, vals[mid] != null);
+			if(node.isPresent())
+				setNodeValue(node.get(), vals[mid]);
+			ranges.add(new int[] { range[0], mid });
+			ranges.add(new int[] { mid + 1, range[1] });
+		}
 	}
-	
-	public Collection<V> valuesWithPrefix(String prefix, boolean caseSensitive) {
-		final AccumulatingNodeVisitor<V> visitor = new AccumulatingNodeVisitor<>();
-		final Optional<TernaryTreeNode<V>> nodeOpt = findNode(prefix, caseSensitive, false);
-		lock.lock();
-		if(nodeOpt.isPresent()) {
-			final TernaryTreeNode<V> node = nodeOpt.get();
-			if(node.isTerminated()) {
-				visitor.nodeSet.add(node);
+
+	/*
+	 * Build nodes for sorted, unique keys into an empty tree, must hold
+	 * write lock
+	 */
+	private void buildBalanced(String[] keys, V[] vals, int count) {
+		// null values would remove keys, which is a no-op for an empty tree
+		int n = 0;
+		for(int i = 0; i < count; i++) {
+			if(vals[i] != null) {
+				keys[n] = keys[i];
+				vals[n] = vals[i];
+				++n;
+			}
+		}
+
+		int from = 0;
+		if(n > 0 && keys[0].length() == 0) {
+			setNodeValue(root, vals[0]);
+			from = 1;
+		}
+		// keys which compare equal to the root char follow the root center
+		int lowEnd = from;
+		while(lowEnd < n && compareChars(keys[lowEnd].charAt(0), root.getChar()) < 0)
+			++lowEnd;
+		int highStart = lowEnd;
+		while(highStart < n && compareChars(keys[highStart].charAt(0), root.getChar()) == 0)
+			++highStart;
+
+		final Deque<BuildTask<V>> tasks = new ArrayDeque<>();
+		tasks.push(new BuildTask<>(from, lowEnd, 0, root, Position.LOW));
+		tasks.push(new BuildTask<>(highStart, n, 0, root, Position.HIGH));
+		while(!tasks.isEmpty()) {
+			final BuildTask<V> task = tasks.pop();
+			final int depth = task.depth;
+
+			// find the median group of keys sharing the char at depth
+			int groups = 0;
+			for(int i = task.from; i < task.to; i++) {
+				if(i == task.from || compareChars(keys[i].charAt(depth), keys[i-1].charAt(depth)) != 0)
+					++groups;
+			}
+			if(groups == 0) continue;
+			int groupStart = task.from;
+			int group = 0;
+			for(int i = task.from + 1; i < task.to && group < groups / 2; i++) {
+				if(compareChars(keys[i].charAt(depth), keys[i-1].charAt(depth)) != 0) {
+					++group;
+					groupStart = i;
+				}
 			}
-			if(node.getCenter() != null) {
-				node.getCenter().acceptVisitMiddle(visitor);
+			int groupEnd = groupStart + 1;
+			while(groupEnd < task.to && compareChars(keys[groupEnd].charAt(depth), keys[groupStart].charAt(depth)) == 0)
+				++groupEnd;
+
+			final TernaryTreeNode<V> node = createNode(task.parent, keys[groupStart].charAt(depth));
+			task.parent.setChild(node, task.position);
+			int centerStart = groupStart;
+			if(keys[groupStart].length() == depth + 1) {
+				setNodeValue(node, vals[groupStart]);
+				++centerStart;
 			}
+			tasks.push(new BuildTask<>(task.from, groupStart, depth, node, Position.LOW));
+			tasks.push(new BuildTask<>(groupEnd, task.to, depth, node, Position.HIGH));
+			tasks.push(new BuildTask<>(centerStart, groupEnd, depth + 1, node, Position.EQUAL));
 		}
-		lock.unlock();
-		
-		ArrayList<V> values = new ArrayList<>();
+
+		insertBalanced(keys, vals, lowEnd, highStart);
+	}
+
+	int compareChars(char c1, char c2) {
+		return CharComparator.compare(comparator, c1, c2);
+	}
+
+	int compareKeys(CharSequence k1, CharSequence k2) {
+		final int len = Math.min(k1.length(), k2.length());
+		for(int i = 0; i < len; i++) {
+			final int cmp = compareChars(k1.charAt(i), k2.charAt(i));
+			if(cmp != 0) return cmp;
+		}
+		return k1.length() - k2.length();
+	}
+
+	private Comparator<Map.Entry<String, V>> entryComparator() {
+		return Map.Entry.comparingByKey(this::compareKeys);
+	}
+
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			root = createRoot();
+			size = 0;
+			if(suffixIndex != null)
+				suffixIndex.clear();
+			if(infixIndex != null)
+				infixIndex.clear();
+			if(caseFoldedIndex != null)
+				caseFoldedIndex.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Number of nodes in the tree, including the root
+	 *
+	 * @return node count
+	 */
+	public int nodeCount() {
+		lock.readLock().lock();
+		try {
+			int retVal = 0;
+			final Deque<TernaryTreeNode<V>> stack = new ArrayDeque<>();
+			stack.push(root);
+			while(!stack.isEmpty()) {
+				final TernaryTreeNode<V> node = stack.pop();
+				++retVal;
+				if(node.getLeft() != null) stack.push(node.getLeft());
+				if(node.getCenter() != null) stack.push(node.getCenter());
+				if(node.getRight() != null) stack.push(node.getRight());
+			}
+			return retVal;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Compact the tree.  Non-terminated nodes without a center subtree,
+	 * left behind by {@link #remove(Object)}, are pruned and each sibling
+	 * tree (nodes linked by left/right children) is rebuilt in balanced form.
+	 *
+	 * Compaction is incremental, the write lock is acquired once for each
+	 * subtree below the first char of keys so that readers are not stalled
+	 * for the entire tree.  Node paths and iterators created before
+	 * compaction are invalidated.
+	 *
+	 * @return node counts before and after compaction
+	 */
+	public CompactionResult compact() {
+		final List<Character> firstChars = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for(TernaryTreeNode<V> node:siblings(root.getLeft()))
+				firstChars.add(node.getChar());
+			for(TernaryTreeNode<V> node:siblings(root.getRight()))
+				firstChars.add(node.getChar());
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		final int[] counts = new int[2];
+		for(char ch:firstChars) {
+			lock.writeLock().lock();
+			try {
+				TernaryTreeNode<V> node = root;
+				while(node != null) {
+					final int cmp = compareChars(ch, node.getChar());
+					if(cmp == 0) break;
+					node = (cmp < 0 ? node.getLeft() : node.getRight());
+				}
+				if(node != null && node != root) {
+					compactLevels(node, Position.EQUAL, counts);
+					subtreeChanged(node);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		lock.writeLock().lock();
+		try {
+			compactLevels(root, Position.EQUAL, counts);
+			if(root.getCenter() != null)
+				subtreeChanged(root.getCenter());
+			// subtrees of first chars were updated above, only refresh rebuilt siblings
+			compactLevel(root, Position.LOW, counts);
+			compactLevel(root, Position.HIGH, counts);
+			siblingsChanged(root.getLeft());
+			siblingsChanged(root.getRight());
+			nodeChanged(root);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return new CompactionResult(counts[0] + 1, counts[1] + 1);
+	}
+
+	/**
+	 * Compact nodes below the node for the given prefix using a single
+	 * write lock.  See {@link #compact()}.
+	 *
+	 * @param prefix
+	 * @return count of nodes below prefix before and after compaction
+	 */
+	public CompactionResult compact(String prefix) {
+		if(prefix.length() == 0) return compact();
+		final int[] counts = new int[2];
+		lock.writeLock().lock();
+		try {
+			final Optional<TernaryTreeNode<V>> node = findNode(prefix);
+			if(node.isPresent()) {
+				compactLevels(node.get(), Position.EQUAL, counts);
+				subtreeChanged(node.get());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return new CompactionResult(counts[0], counts[1]);
+	}
+
+	/*
+	 * Compact sibling tree at the given position of parent and all sibling
+	 * trees below it.  Levels are processed bottom-up so that dead chains
+	 * are removed entirely.  Must hold write lock.
+	 */
+	private void compactLevels(TernaryTreeNode<V> parent, Position pos, int[] counts) {
+		// parents of sibling trees in pre-order, all but the first are center children
+		final List<TernaryTreeNode<V>> parents = new ArrayList<>();
+		parents.add(parent);
+		for(int i = 0; i < parents.size(); i++) {
+			for(TernaryTreeNode<V> sibling:siblings(parents.get(i).getChild(i == 0 ? pos : Position.EQUAL))) {
+				if(sibling.getCenter() != null)
+					parents.add(sibling);
+			}
+		}
+		for(int i = parents.size() - 1; i >= 0; i--) {
+			compactLevel(parents.get(i), (i == 0 ? pos : Position.EQUAL), counts);
+		}
+	}
+
+	/*
+	 * Prune dead nodes from the sibling tree at the given position and
+	 * rebuild it balanced.  Must hold write lock.
+	 */
+	private void compactLevel(TernaryTreeNode<V> parent, Position pos, int[] counts) {
+		final List<TernaryTreeNode<V>> siblings = siblings(parent.getChild(pos));
+		counts[0] += siblings.size();
+		siblings.removeIf( (node) -> !node.isTerminated() && node.getCenter() == null );
+		counts[1] += siblings.size();
+		parent.setChild(buildSiblings(siblings, 0, siblings.size(), parent), pos);
+	}
+
+	/*
+	 * Notify nodes of a rebuilt sibling tree with children before parents,
+	 * must hold write lock
+	 */
+	private void siblingsChanged(TernaryTreeNode<V> head) {
+		if(head == null) return;
+		final List<TernaryTreeNode<V>> nodes = new ArrayList<>();
+		nodes.add(head);
+		for(int i = 0; i < nodes.size(); i++) {
+			final TernaryTreeNode<V> node = nodes.get(i);
+			if(node.getLeft() != null) nodes.add(node.getLeft());
+			if(node.getRight() != null) nodes.add(node.getRight());
+		}
+		for(int i = nodes.size() - 1; i >= 0; i--)
+			nodeChanged(nodes.get(i));
+	}
+
+	/*
+	 * Returns nodes of the sibling tree with the given head in order
+	 */
+	private List<TernaryTreeNode<V>> siblings(TernaryTreeNode<V> head) {
+		final List<TernaryTreeNode<V>> retVal = new ArrayList<>();
+		final Deque<TernaryTreeNode<V>> stack = new ArrayDeque<>();
+		TernaryTreeNode<V> node = head;
+		while(node != null || !stack.isEmpty()) {
+			while(node != null) {
+				stack.push(node);
+				node = node.getLeft();
+			}
+			node = stack.pop();
+			retVal.add(node);
+			node = node.getRight();
+		}
+		return retVal;
+	}
+
+	/*
+	 * Link nodes as a balanced sibling tree, recursion depth is bounded
+	 * by the log of the number of siblings.
+	 */
+	private TernaryTreeNode<V> buildSiblings(List<TernaryTreeNode<V>> nodes, int from, int to, TernaryTreeNode<V> parent) {
+		if(from >= to) return null;
+		final int mid = (from + to) >>> 1;
+		final TernaryTreeNode<V> node = nodes.get(mid);
+		node.setParent(parent);
+		node.setLeft(buildSiblings(nodes, from, mid, node));
+		node.setRight(buildSiblings(nodes, mid + 1, to, node));
+		return node;
+	}
+
+	/*
+	 * Clear value of node and unlink nodes which are no longer needed,
+	 * must hold write lock
+	 */
+	private V removeNode(TernaryTreeNode<V> node) {
+		final V retVal = setNodeValue(node, null);
+		prune(node);
+		return retVal;
+	}
+
+	/*
+	 * Clear value of node and unlink nodes which are no longer needed, used
+	 * by iterators which re-position themselves after removal
+	 */
+	V removeIteratorNode(TernaryTreeNode<V> node) {
+		lock.writeLock().lock();
+		try {
+			return removeNode(node);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Unlink non-terminated nodes without a center child starting at node
+	 * and continuing up through parents.  A node with both left and right
+	 * children is replaced by its in-order successor.  Fields of unlinked
+	 * nodes are left unchanged.  Must hold write lock.
+	 */
+	private void prune(TernaryTreeNode<V> node) {
+		while(!node.isRoot() && !node.isTerminated() && node.getCenter() == null) {
+			final TernaryTreeNode<V> parent = node.getParent();
+			final Position pos;
+			if(parent.getLeft() == node)
+				pos = Position.LOW;
+			else if(parent.getCenter() == node)
+				pos = Position.EQUAL;
+			else if(parent.getRight() == node)
+				pos = Position.HIGH;
+			else
+				break; // already unlinked
+
+			final TernaryTreeNode<V> left = node.getLeft();
+			final TernaryTreeNode<V> right = node.getRight();
+
+			TernaryTreeNode<V> replacement;
+			// lowest node with changed children when splicing
+			TernaryTreeNode<V> changed = null;
+			if(left == null) {
+				replacement = right;
+			} else if(right == null) {
+				replacement = left;
+			} else {
+				replacement = right;
+				while(replacement.getLeft() != null)
+					replacement = replacement.getLeft();
+				changed = replacement;
+				if(replacement != right) {
+					final TernaryTreeNode<V> replacementParent = replacement.getParent();
+					replacementParent.setLeft(replacement.getRight());
+					if(replacement.getRight() != null)
+						replacement.getRight().setParent(replacementParent);
+					replacement.setRight(right);
+					right.setParent(replacement);
+					changed = replacementParent;
+				}
+				replacement.setLeft(left);
+				left.setParent(replacement);
+			}
+
+			parent.setChild(replacement, pos);
+			if(replacement != null)
+				replacement.setParent(parent);
+			if(changed != null)
+				nodeChanged(changed);
+
+			node = parent;
+		}
+		nodeChanged(node);
+	}
+
+	/**
+	 * Set value of given node and update entry count.  Must be called
+	 * while holding the tree write lock.
+	 *
+	 * @param node
+	 * @param value
+	 * @return previous value of node
+	 */
+	private V setNodeValue(TernaryTreeNode<V> node, V value) {
+		final V oldVal = node.setValue(value);
+		nodeChanged(node);
+		if(oldVal == null && value != null) {
+			++size;
+			if(suffixIndex != null || infixIndex != null || caseFoldedIndex != null)
+				indexNode(node);
+		} else if(oldVal != null && value == null) {
+			--size;
+			if(suffixIndex != null || infixIndex != null || caseFoldedIndex != null)
+				unindexNode(node);
+		}
+		return oldVal;
+	}
+
+	/*
+	 * Add newly terminated node to indexes, must hold write lock
+	 */
+	private void indexNode(TernaryTreeNode<V> node) {
+		final String key = node.getPrefix();
+		if(suffixIndex != null)
+			suffixIndex.put(reverse(key), node);
+		if(infixIndex != null) {
+			for(String gram:grams(key)) {
+				Set<TernaryTreeNode<V>> posting = infixIndex.get(gram);
+				if(posting == null) {
+					posting = new HashSet<>();
+					infixIndex.put(gram, posting);
+				}
+				posting.add(node);
+			}
+		}
+		if(caseFoldedIndex != null) {
+			final String folded = lowerCase(key);
+			Set<TernaryTreeNode<V>> posting = caseFoldedIndex.get(folded);
+			if(posting == null) {
+				posting = new HashSet<>();
+				caseFoldedIndex.put(folded, posting);
+			}
+			posting.add(node);
+		}
+	}
+
+	/*
+	 * Remove node from indexes, must hold write lock
+	 */
+	private void unindexNode(TernaryTreeNode<V> node) {
+		final String key = node.getPrefix();
+		if(suffixIndex != null)
+			suffixIndex.remove(reverse(key));
+		if(infixIndex != null) {
+			for(String gram:grams(key)) {
+				final Set<TernaryTreeNode<V>> posting = infixIndex.get(gram);
+				if(posting != null && posting.remove(node) && posting.isEmpty())
+					infixIndex.remove(gram);
+			}
+		}
+		if(caseFoldedIndex != null) {
+			final String folded = lowerCase(key);
+			final Set<TernaryTreeNode<V>> posting = caseFoldedIndex.get(folded);
+			if(posting != null && posting.remove(node) && posting.isEmpty())
+				caseFoldedIndex.remove(folded);
+		}
+	}
+
+	/**
+	 * Returns a view of the keys in this tree.  The view is backed by
+	 * the tree and keys are reconstructed lazily during iteration.
+	 */
+	@Override
+	public Set<String> keySet() {
+		Set<String> retVal = keySet;
+		if(retVal == null) {
+			retVal = new KeySet();
+			keySet = retVal;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns a view of the values in this tree.  The view is backed by
+	 * the tree.
+	 */
+	@Override
+	public Collection<V> values() {
+		Collection<V> retVal = values;
+		if(retVal == null) {
+			retVal = new Values();
+			values = retVal;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns a view of the entries in this tree.  The view is backed by
+	 * the tree and entries are created lazily during iteration.  Calling
+	 * {@link Map.Entry#setValue(Object)} on a returned entry will update
+	 * the tree.
+	 */
+	@Override
+	public Set<java.util.Map.Entry<String, V>> entrySet() {
+		Set<Map.Entry<String, V>> retVal = entrySet;
+		if(retVal == null) {
+			retVal = new EntrySet();
+			entrySet = retVal;
+		}
+		return retVal;
+	}
+	
+	/**
+	 * Returns <code>null</code> if keys are compared using natural char
+	 * order, otherwise a comparator for keys using the tree's char
+	 * comparator.
+	 */
+	@Override
+	public Comparator<? super String> comparator() {
+		return (comparator == null ? null : this::compareKeys);
+	}
+
+	/**
+	 * Locate the first entry following or preceding key.
+	 *
+	 * @param key key to seek or <code>null</code> to start at the first
+	 *  or last key
+	 * @param inclusive
+	 * @param descending
+	 * @return entry snapshot or <code>null</code>
+	 */
+	private Map.Entry<String, V> seekEntry(String key, boolean inclusive, boolean descending) {
+		lock.readLock().lock();
+		try {
+			final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(this, descending);
+			if(key != null)
+				itr.seek(key, inclusive);
+			if(!itr.hasNext()) return null;
+			final TernaryTreeNode<V> node = itr.next();
+			return new AbstractMap.SimpleImmutableEntry<>(itr.getCurrentKey().toString(), node.getValue());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static String keyOrNull(Map.Entry<String, ?> entry) {
+		return (entry == null ? null : entry.getKey());
+	}
+
+	private static String keyOrThrow(Map.Entry<String, ?> entry) {
+		if(entry == null)
+			throw new NoSuchElementException();
+		return entry.getKey();
+	}
+
+	@Override
+	public Map.Entry<String, V> lowerEntry(String key) {
+		return seekEntry(Objects.requireNonNull(key), false, true);
+	}
+
+	@Override
+	public String lowerKey(String key) {
+		return keyOrNull(lowerEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> floorEntry(String key) {
+		return seekEntry(Objects.requireNonNull(key), true, true);
+	}
+
+	@Override
+	public String floorKey(String key) {
+		return keyOrNull(floorEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> ceilingEntry(String key) {
+		return seekEntry(Objects.requireNonNull(key), true, false);
+	}
+
+	@Override
+	public String ceilingKey(String key) {
+		return keyOrNull(ceilingEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> higherEntry(String key) {
+		return seekEntry(Objects.requireNonNull(key), false, false);
+	}
+
+	@Override
+	public String higherKey(String key) {
+		return keyOrNull(higherEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> firstEntry() {
+		return seekEntry(null, true, false);
+	}
+
+	@Override
+	public Map.Entry<String, V> lastEntry() {
+		return seekEntry(null, true, true);
+	}
+
+	@Override
+	public String firstKey() {
+		return keyOrThrow(firstEntry());
+	}
+
+	@Override
+	public String lastKey() {
+		return keyOrThrow(lastEntry());
+	}
+
+	@Override
+	public Map.Entry<String, V> pollFirstEntry() {
+		return pollEntry(false);
+	}
+
+	@Override
+	public Map.Entry<String, V> pollLastEntry() {
+		return pollEntry(true);
+	}
+
+	private Map.Entry<String, V> pollEntry(boolean last) {
+		lock.writeLock().lock();
+		try {
+			final Map.Entry<String, V> retVal = seekEntry(null, true, last);
+			if(retVal != null)
+				remove(retVal.getKey());
+			return retVal;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public NavigableMap<String, V> descendingMap() {
+		return new TernaryTreeSubMap<>(this, null, true, null, true, true);
+	}
+
+	@Override
+	public NavigableSet<String> navigableKeySet() {
+		return new TernaryTreeSubMap<>(this, null, true, null, true, false).navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<String> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+
+	@Override
+	public NavigableMap<String, V> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+		if(compareKeys(fromKey, toKey) > 0)
+			throw new IllegalArgumentException("fromKey > toKey");
+		return new TernaryTreeSubMap<>(this, fromKey, fromInclusive, toKey, toInclusive, false);
+	}
+
+	@Override
+	public NavigableMap<String, V> headMap(String toKey, boolean inclusive) {
+		return new TernaryTreeSubMap<>(this, null, true, Objects.requireNonNull(toKey), inclusive, false);
+	}
+
+	@Override
+	public NavigableMap<String, V> tailMap(String fromKey, boolean inclusive) {
+		return new TernaryTreeSubMap<>(this, Objects.requireNonNull(fromKey), inclusive, null, true, false);
+	}
+
+	@Override
+	public SortedMap<String, V> subMap(String fromKey, String toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedMap<String, V> headMap(String toKey) {
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public SortedMap<String, V> tailMap(String fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	/**
+	 * Returns a stream of entries in key order.  The stream is backed by
+	 * the tree and splits by subtree when run in parallel.
+	 *
+	 * @return entry stream
+	 */
+	public Stream<Map.Entry<String, V>> entryStream() {
+		return StreamSupport.stream(entrySet().spliterator(), false);
+	}
+
+	/**
+	 * Returns a stream of keys in key order.
+	 *
+	 * @return key stream
+	 */
+	public Stream<String> keyStream() {
+		return StreamSupport.stream(keySet().spliterator(), false);
+	}
+
+	public Stream<Map.Entry<String, V>> streamWithPrefix(String prefix) {
+		return streamWithPrefix(prefix, true);
+	}
+
+	/**
+	 * Returns a stream of entries with keys starting with prefix in key order.
+	 *
+	 * @param prefix
+	 * @param caseSensitive
+	 * @return entry stream
+	 */
+	public Stream<Map.Entry<String, V>> streamWithPrefix(String prefix, boolean caseSensitive) {
+		if(prefix.length() == 0)
+			return entryStream();
+		final TreeSpliterator<Map.Entry<String, V>> spliterator = new TreeSpliterator<>(NodeEntry::new, entryComparator(), -1L);
+		lock.readLock().lock();
+		try {
+			if(caseSensitive) {
+				final Optional<TernaryTreeNode<V>> nodeOpt = findNode(prefix, true, false);
+				if(nodeOpt.isPresent()) {
+					final TernaryTreeNode<V> node = nodeOpt.get();
+					spliterator.addLast(node.getCenter(), prefix, false);
+					spliterator.addFirst(node, prefix, true);
+				}
+			} else {
+				// actual keys may differ from prefix by case
+				for(TernaryTreeNode<V> node:sortNodes(findNodesIgnoreCase(prefix))) {
+					final String key = node.getPrefix();
+					spliterator.addLast(node, key, true);
+					spliterator.addLast(node.getCenter(), key, false);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return StreamSupport.stream(spliterator, false);
+	}
+	
+	public Set<String> keysWithPrefix(String prefix) {
+		return keysWithPrefix(prefix, true);
+	}
+	
+	public Set<String> keysWithPrefix(String prefix, boolean caseSensitive) {
+		final LinkedHashSet<String> retVal = new LinkedHashSet<>();
+		visitWithPrefix(prefix, caseSensitive, (node, key) -> {
+			if(node.isTerminated())
+				retVal.add(key.toString());
+			return false;
+		});
+		return retVal;
+	}
+	
+	public Collection<V> valuesWithPrefix(String prefix) {
+		return valuesWithPrefix(prefix, true);
+	}
+	
+	public Collection<V> valuesWithPrefix(String prefix, boolean caseSensitive) {
+		if(!caseSensitive) {
+			final List<V> values = new ArrayList<>();
+			visitWithPrefix(prefix, false, (node, key) -> {
+				if(node.isTerminated())
+					values.add(node.getValue());
+				return false;
+			});
+			return values;
+		}
+		final AccumulatingNodeVisitor<V> visitor = new AccumulatingNodeVisitor<>();
+		lock.readLock().lock();
+		try {
+			if(prefix.length() == 0) {
+				getRoot().acceptVisitMiddle(visitor);
+			} else {
+				final Optional<TernaryTreeNode<V>> nodeOpt = findNode(prefix, true, false);
+				if(nodeOpt.isPresent()) {
+					final TernaryTreeNode<V> node = nodeOpt.get();
+					if(node.isTerminated()) {
+						visitor.nodeSet.add(node);
+					}
+					if(node.getCenter() != null) {
+						node.getCenter().acceptVisitMiddle(visitor);
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		
+		ArrayList<V> values = new ArrayList<>();
 		visitor.nodeSet.stream()
 				.map( n -> n.getValue() )
 				.forEach(values::add);
@@ -222,46 +1582,249 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	}
 	
 	public Set<java.util.Map.Entry<String, V>> entriesWithPrefix(String prefix, boolean caseSensitive) {
-		final AccumulatingNodeVisitor<V> visitor = new AccumulatingNodeVisitor<V>();
-		final Optional<TernaryTreeNode<V>> nodeOpt = findNode(prefix, caseSensitive, false);
-		lock.lock();
-		if(nodeOpt.isPresent()) {
-			final TernaryTreeNode<V> node = nodeOpt.get();
-			if(node.isTerminated()) {
-				visitor.nodeSet.add(node);
+		final LinkedHashSet<java.util.Map.Entry<String, V>> retVal = new LinkedHashSet<>();
+		visitWithPrefix(prefix, caseSensitive, (node, key) -> {
+			if(node.isTerminated())
+				retVal.add(new Entry(key.toString(), node.getValue()));
+			return false;
+		});
+		return retVal;
+	}
+
+	/**
+	 * Visit the node for prefix (if it exists) and all nodes in its center
+	 * subtree with a path-aware visitor.  If not case sensitive every node
+	 * matching prefix is visited in key order, or only terminated nodes
+	 * when answered by the case-folded index.
+	 *
+	 * @param prefix
+	 * @param caseSensitive
+	 * @param visitor
+	 */
+	private void visitWithPrefix(String prefix, boolean caseSensitive, TernaryTreeKeyVisitor<V> visitor) {
+		lock.readLock().lock();
+		try {
+			if(prefix.length() == 0) {
+				getRoot().acceptVisitMiddle(visitor, prefix);
+				return;
 			}
-			if(node.getCenter() != null) {
-				node.getCenter().acceptVisitMiddle(visitor);
+			if(caseSensitive) {
+				final Optional<TernaryTreeNode<V>> nodeOpt = findNode(prefix, true, false);
+				if(nodeOpt.isPresent()) {
+					final TernaryTreeNode<V> node = nodeOpt.get();
+					visitor.visit(node, prefix);
+					if(node.getCenter() != null)
+						node.getCenter().acceptVisitMiddle(visitor, prefix);
+				}
+			} else if(caseFoldedIndex != null) {
+				final List<TernaryTreeNode<V>> nodes = new ArrayList<>();
+				for(Set<TernaryTreeNode<V>> posting:caseFoldedIndex.valuesWithPrefix(lowerCase(prefix)))
+					nodes.addAll(posting);
+				for(TernaryTreeNode<V> node:sortNodes(nodes)) {
+					visitor.visit(node, node.getPrefix());
+				}
+			} else {
+				// actual keys may differ from prefix by case
+				for(TernaryTreeNode<V> node:sortNodes(findNodesIgnoreCase(prefix))) {
+					final String key = node.getPrefix();
+					visitor.visit(node, key);
+					if(node.getCenter() != null)
+						node.getCenter().acceptVisitMiddle(visitor, key);
+				}
 			}
+		} finally {
+			lock.readLock().unlock();
 		}
-		lock.unlock();
-		
-		LinkedHashSet<java.util.Map.Entry<String, V>> retVal = new LinkedHashSet<>();
-		visitor.nodeSet.stream()
-			.map( n -> {
-				return new Entry(n.getPrefix(), n.getValue());
-			})
-			.forEach(retVal::add);
-		return retVal;
 	}
 	
+	/**
+	 * Returns the k entries with keys starting with prefix which have the
+	 * highest score, ordered by descending score and then by key.  Every
+	 * entry with the prefix is scored, {@link ScoredTernaryTree} provides a
+	 * best-first search which only visits the nodes required.
+	 *
+	 * @param prefix
+	 * @param k
+	 * @param scoreFunction
+	 * @return top k entries
+	 */
+	public List<Map.Entry<String, V>> topKWithPrefix(String prefix, int k, ToDoubleFunction<? super V> scoreFunction) {
+		final List<Map.Entry<String, V>> retVal = new ArrayList<>();
+		if(k <= 0) return retVal;
+
+		// min-heap of best entries, ties resolved in favour of earlier keys
+		final PriorityQueue<ScoredEntry<V>> heap = new PriorityQueue<>(k,
+				(e1, e2) -> e1.score != e2.score ? Double.compare(e1.score, e2.score) : compareKeys(e2.key, e1.key));
+		visitWithPrefix(prefix, true, (node, key) -> {
+			if(node.isTerminated()) {
+				final double score = scoreFunction.applyAsDouble(node.getValue());
+				if(heap.size() < k) {
+					heap.add(new ScoredEntry<>(key.toString(), node.getValue(), score));
+				} else if(score > heap.peek().score) {
+					heap.poll();
+					heap.add(new ScoredEntry<>(key.toString(), node.getValue(), score));
+				}
+			}
+			return false;
+		});
+		while(!heap.isEmpty()) {
+			final ScoredEntry<V> entry = heap.poll();
+			retVal.add(new Entry(entry.key, entry.value));
+		}
+		Collections.reverse(retVal);
+		return retVal;
+	}
+
+	private static final class ScoredEntry<V> {
+
+		final String key;
+
+		final V value;
+
+		final double score;
+
+		ScoredEntry(String key, V value, double score) {
+			this.key = key;
+			this.value = value;
+			this.score = score;
+		}
+
+	}
+
+	/**
+	 * Returns keys within the given Levenshtein distance of query in key order.
+	 *
+	 * @param query
+	 * @param maxEdits maximum number of insertions, deletions and substitutions
+	 * @return keys within distance
+	 */
+	public Set<String> keysWithinDistance(String query, int maxEdits) {
+		return keysWithinDistance(query, maxEdits, true);
+	}
+
+	public Set<String> keysWithinDistance(String query, int maxEdits, boolean caseSensitive) {
+		final Set<String> retVal = new LinkedHashSet<>();
+		visitWithinDistance(query, maxEdits, caseSensitive, (node, key) -> retVal.add(key.toString()));
+		return retVal;
+	}
+
+	public Collection<V> valuesWithinDistance(String query, int maxEdits) {
+		return valuesWithinDistance(query, maxEdits, true);
+	}
+
+	public Collection<V> valuesWithinDistance(String query, int maxEdits, boolean caseSensitive) {
+		final List<V> retVal = new ArrayList<>();
+		visitWithinDistance(query, maxEdits, caseSensitive, (node, key) -> retVal.add(node.getValue()));
+		return retVal;
+	}
+
+	public Set<Map.Entry<String, V>> entriesWithinDistance(String query, int maxEdits) {
+		return entriesWithinDistance(query, maxEdits, true);
+	}
+
+	public Set<Map.Entry<String, V>> entriesWithinDistance(String query, int maxEdits, boolean caseSensitive) {
+		final Set<Map.Entry<String, V>> retVal = new LinkedHashSet<>();
+		visitWithinDistance(query, maxEdits, caseSensitive, (node, key) -> retVal.add(new Entry(key.toString(), node.getValue())));
+		return retVal;
+	}
+
+	/**
+	 * Visit terminated nodes with keys within maxEdits of query in key order.
+	 * A row of the Levenshtein matrix is computed for each char of the key
+	 * as the tree is traversed and center subtrees are skipped once every
+	 * entry in the row exceeds maxEdits.
+	 *
+	 * @param query
+	 * @param maxEdits
+	 * @param caseSensitive
+	 * @param visitor
+	 */
+	private void visitWithinDistance(String query, int maxEdits, boolean caseSensitive, TernaryTreeKeyVisitor<V> visitor) {
+		if(maxEdits < 0)
+			throw new IllegalArgumentException("maxEdits must be >= 0");
+		final int cols = query.length() + 1;
+		final char[] queryChars = (caseSensitive ? query : lowerCase(query)).toCharArray();
+
+		// rows[d] is the row for the first d chars of the key
+		int[][] rows = new int[16][];
+		rows[0] = new int[cols];
+		for(int j = 0; j < cols; j++)
+			rows[0][j] = j;
+
+		final TernaryTreeKeyBuffer keyBuffer = new TernaryTreeKeyBuffer();
+		final Deque<TernaryTreeNode<V>> nodeStack = new ArrayDeque<>();
+		// depth of node in key with phase in low bit
+		int[] states = new int[32];
+
+		lock.readLock().lock();
+		try {
+			if(root.isTerminated() && query.length() <= maxEdits)
+				visitor.visit(root, "");
+
+			nodeStack.push(root);
+			states[0] = 0;
+			while(!nodeStack.isEmpty()) {
+				final TernaryTreeNode<V> node = nodeStack.pop();
+				final int state = states[nodeStack.size()];
+				final int depth = state >>> 1;
+
+				if((state & 1) == 0) {
+					states = pushState(nodeStack, states, node, depth << 1 | 1);
+					if(node.getLeft() != null)
+						states = pushState(nodeStack, states, node.getLeft(), depth << 1);
+					continue;
+				}
+
+				if(node.getRight() != null)
+					states = pushState(nodeStack, states, node.getRight(), depth << 1);
+
+				if(depth + 1 == rows.length)
+					rows = Arrays.copyOf(rows, rows.length * 2);
+				if(rows[depth + 1] == null)
+					rows[depth + 1] = new int[cols];
+				final int[] prevRow = rows[depth];
+				final int[] row = rows[depth + 1];
+				final char ch = (caseSensitive ? node.getChar() : Character.toLowerCase(node.getChar()));
+				row[0] = depth + 1;
+				int rowMin = row[0];
+				for(int j = 1; j < cols; j++) {
+					final int cost = (compareChars(queryChars[j-1], ch) == 0 ? 0 : 1);
+					row[j] = Math.min(Math.min(row[j-1] + 1, prevRow[j] + 1), prevRow[j-1] + cost);
+					rowMin = Math.min(rowMin, row[j]);
+				}
+
+				keyBuffer.setLength(depth);
+				keyBuffer.push(node.getChar());
+				if(!node.isRoot() && node.isTerminated() && row[cols - 1] <= maxEdits)
+					visitor.visit(node, keyBuffer);
+				if(node.getCenter() != null && rowMin <= maxEdits)
+					states = pushState(nodeStack, states, node.getCenter(), (depth + 1) << 1);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private int[] pushState(Deque<TernaryTreeNode<V>> nodeStack, int[] states, TernaryTreeNode<V> node, int state) {
+		if(nodeStack.size() == states.length)
+			states = Arrays.copyOf(states, states.length * 2);
+		states[nodeStack.size()] = state;
+		nodeStack.push(node);
+		return states;
+	}
+
 	public Set<String> keysContaining(String infix) {
 		return keysContaining(infix, true);
 	}
 	
 	public Set<String> keysContaining(String infix, boolean caseSensitive) {
-		final NodeContainsVisitor<V> visitor = new NodeContainsVisitor<>(infix, caseSensitive);
-		lock.lock();
-		if(getRoot() != null) {
-			getRoot().acceptVisitMiddle(visitor);
-		}
-		lock.unlock();
-		
-		LinkedHashSet<String> retVal = new LinkedHashSet<>();
-		visitor.nodeSet.stream()
-				.map( n -> n.getPrefix() )
-				.forEach(retVal::add);
-		return retVal;
+		final Set<String> retVal = new LinkedHashSet<>();
+		if(visitInfixIndex(infix, caseSensitive, (node, key) -> retVal.add(key.toString())))
+			return retVal;
+
+		final KeyContainsVisitor visitor = new KeyContainsVisitor(infix, caseSensitive);
+		visitAll(visitor);
+		return visitor.getResult();
 	}
 	
 	public Collection<V> valuesForKeysContaining(String infix) {
@@ -269,18 +1832,13 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	}
 	
 	public Collection<V> valuesForKeysContaining(String infix, boolean caseSensitive) {
-		final NodeContainsVisitor<V> visitor = new NodeContainsVisitor<V>(infix, caseSensitive);
-		lock.lock();
-		if(getRoot() != null) {
-			getRoot().acceptVisitMiddle(visitor);
-		}
-		lock.unlock();
-		
-		ArrayList<V> values = new ArrayList<>();
-		visitor.nodeSet.stream()
-				.map( n -> n.getValue() )
-				.forEach(values::add);
-		return values;
+		final List<V> retVal = new ArrayList<>();
+		if(visitInfixIndex(infix, caseSensitive, (node, key) -> retVal.add(node.getValue())))
+			return retVal;
+
+		final ValuesForKeyContainsVisitor visitor = new ValuesForKeyContainsVisitor(infix, caseSensitive);
+		visitAll(visitor);
+		return visitor.getResult();
 	}
 	
 	public Set<java.util.Map.Entry<String, V>> entriesForKeysContaining(String infix) {
@@ -288,20 +1846,13 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	}
 	
 	public Set<java.util.Map.Entry<String, V>> entriesForKeysContaining(String infix, boolean caseSensitive) {
-		final NodeContainsVisitor<V> visitor = new NodeContainsVisitor<>(infix, caseSensitive);
-		lock.lock();
-		if(getRoot() != null) {
-			getRoot().acceptVisitMiddle(visitor);
-		}
-		lock.unlock();
-		
-		LinkedHashSet<java.util.Map.Entry<String, V>> retVal = new LinkedHashSet<>();
-		visitor.nodeSet.stream()
-			.map( n -> {
-				return new Entry(n.getPrefix(), n.getValue());
-			})
-			.forEach(retVal::add);
-		return retVal;
+		final Set<Map.Entry<String, V>> retVal = new LinkedHashSet<>();
+		if(visitInfixIndex(infix, caseSensitive, (node, key) -> retVal.add(new Entry(key.toString(), node.getValue()))))
+			return retVal;
+
+		final EntriesForKeyContainsVisitor visitor = new EntriesForKeyContainsVisitor(infix, caseSensitive);
+		visitAll(visitor);
+		return visitor.getResult();
 	}
 	
 	public Set<String> keysEndingWith(String suffix) {
@@ -309,12 +1860,12 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	}
 	
 	public Set<String> keysEndingWith(String suffix, boolean caseSensitive) {
+		final Set<String> retVal = new LinkedHashSet<>();
+		if(visitSuffixIndex(suffix, caseSensitive, (node, key) -> retVal.add(key.toString())))
+			return retVal;
+
 		final KeyEndsWithVisitor visitor = new KeyEndsWithVisitor(suffix, caseSensitive);
-		lock.lock();
-		if(getRoot() != null) {
-			getRoot().acceptVisitMiddle(visitor);
-		}
-		lock.unlock();
+		visitAll(visitor);
 		return visitor.getResult();
 	}
 	
@@ -323,12 +1874,12 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	}
 	
 	public Collection<V> valuesForKeysEndingWith(String suffix, boolean caseSensitive) {
+		final List<V> retVal = new ArrayList<>();
+		if(visitSuffixIndex(suffix, caseSensitive, (node, key) -> retVal.add(node.getValue())))
+			return retVal;
+
 		final ValuesForKeyEndsWithVisitor visitor = new ValuesForKeyEndsWithVisitor(suffix, caseSensitive);
-		lock.lock();
-		if(getRoot() != null) {
-			getRoot().acceptVisitMiddle(visitor);
-		}
-		lock.unlock();
+		visitAll(visitor);
 		return visitor.getResult();
 	}
 	
@@ -337,15 +1888,122 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	}
 	
 	public Set<Map.Entry<String, V>> entriesForKeysEndingWith(String suffix, boolean caseSensitive) {
+		final Set<Map.Entry<String, V>> retVal = new LinkedHashSet<>();
+		if(visitSuffixIndex(suffix, caseSensitive, (node, key) -> retVal.add(new Entry(key.toString(), node.getValue()))))
+			return retVal;
+
 		final EntriesForKeyEndsWithVisitor visitor = new EntriesForKeyEndsWithVisitor(suffix, caseSensitive);
-		lock.lock();
-		if(getRoot() != null) {
-			getRoot().acceptVisitMiddle(visitor);
-		}
-		lock.unlock();
+		visitAll(visitor);
 		return visitor.getResult();
 	}
 
+	/**
+	 * Visit all nodes in the tree with a path-aware visitor.
+	 *
+	 * @param visitor
+	 */
+	private void visitAll(TernaryTreeKeyVisitor<V> visitor) {
+		lock.readLock().lock();
+		try {
+			getRoot().acceptVisitMiddle(visitor, "");
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Visit all nodes in the tree using the common fork-join pool.
+	 *
+	 * @see #parallelVisit(Supplier, BinaryOperator, ForkJoinPool)
+	 */
+	public <T extends TernaryTreeKeyVisitor<V>> T parallelVisit(Supplier<? extends T> visitorFactory, BinaryOperator<T> combiner) {
+		return parallelVisit(visitorFactory, combiner, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Visit all nodes in the tree with path-aware visitors, processing
+	 * independent subtrees concurrently.  Each task visits its nodes with a
+	 * visitor obtained from visitorFactory and results are merged using
+	 * combiner, which is given results in key order (i.e., all keys visited
+	 * by the first argument are less than keys visited by the second.)
+	 * Writers are blocked until the visit is complete.
+	 *
+	 * @param visitorFactory
+	 * @param combiner
+	 * @param pool
+	 * @return combined visitor
+	 */
+	public <T extends TernaryTreeKeyVisitor<V>> T parallelVisit(Supplier<? extends T> visitorFactory, BinaryOperator<T> combiner,
+			ForkJoinPool pool) {
+		lock.readLock().lock();
+		try {
+			return pool.invoke(new VisitTask<>(getRoot(), "", visitorFactory, combiner));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Visits a subtree, forking tasks for left, center and right subtrees
+	 * until enough tasks are queued to keep workers busy.
+	 */
+	private static final class VisitTask<V, T extends TernaryTreeKeyVisitor<V>> extends RecursiveTask<T> {
+
+		private static final long serialVersionUID = 1L;
+
+		/* subtrees are visited sequentially when more tasks than this are queued */
+		private static final int SURPLUS_THRESHOLD = 3;
+
+		private final TernaryTreeNode<V> node;
+
+		/* key of the path leading to node, not including node's char */
+		private final String prefix;
+
+		private final Supplier<? extends T> visitorFactory;
+
+		private final BinaryOperator<T> combiner;
+
+		VisitTask(TernaryTreeNode<V> node, String prefix, Supplier<? extends T> visitorFactory, BinaryOperator<T> combiner) {
+			this.node = node;
+			this.prefix = prefix;
+			this.visitorFactory = visitorFactory;
+			this.combiner = combiner;
+		}
+
+		@Override
+		protected T compute() {
+			if(getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD) {
+				final T visitor = visitorFactory.get();
+				node.acceptVisitMiddle(visitor, prefix);
+				return visitor;
+			}
+
+			// all subtrees are forked so that skewed trees do not recurse
+			final String key = prefix + node.getChar();
+			final VisitTask<V, T> right = (node.getRight() != null
+					? new VisitTask<>(node.getRight(), prefix, visitorFactory, combiner) : null);
+			if(right != null) right.fork();
+			final VisitTask<V, T> center = (node.getCenter() != null
+					? new VisitTask<>(node.getCenter(), key, visitorFactory, combiner) : null);
+			if(center != null) center.fork();
+			final VisitTask<V, T> left = (node.getLeft() != null
+					? new VisitTask<>(node.getLeft(), prefix, visitorFactory, combiner) : null);
+			if(left != null) left.fork();
+
+			final T visitor = visitorFactory.get();
+			visitor.visit(node, node.isRoot() ? "" : key);
+			T retVal = visitor;
+			if(left != null) {
+				// the empty key of the root precedes keys in its left subtree
+				retVal = (node.isRoot() ? combiner.apply(visitor, left.join()) : combiner.apply(left.join(), visitor));
+			}
+			if(center != null) retVal = combiner.apply(retVal, center.join());
+			if(right != null) retVal = combiner.apply(retVal, right.join());
+			return retVal;
+		}
+
+	}
+
 	/**
 	 * Find node for given path
 	 *
@@ -389,65 +2047,266 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 	 */
 	public Optional<TernaryTreeNode<V>> findNode(String key, boolean caseSensitive, boolean create) {
 		if(key.length() == 0) return Optional.of(root);
-		TernaryTreeNode<V> retVal = null;
-		
-		lock.lock();
+		if(!caseSensitive && !create)
+			return findNodeIgnoreCase(key);
+		return Optional.ofNullable(lookupNode(key, create));
+	}
+
+	/*
+	 * Case sensitive lookup returning the node for key or null, nodes
+	 * are created along the path if create is true.  Chars are compared
+	 * as primitives with a specialized loop for natural ordering.
+	 */
+	private TernaryTreeNode<V> lookupNode(String key, boolean create) {
+		final int keyLength = key.length();
+		if(keyLength == 0) return root;
+		final Comparator<Character> charComparator = comparator;
 		
-		TernaryTreeNode<V> prevNode = null;
-		TernaryTreeNode<V> currentNode = getRoot();
-		int charIndex = 0;
-		Position lastPos = Position.EQUAL;
-		while(true) {
-			Character keyChar = key.charAt(charIndex);
-			if(currentNode == null) {
-				if(create) {
-					final TernaryTreeNode<V> newNode = new TernaryTreeNode<V>(prevNode, keyChar);
+		final Lock l = (create ? lock.writeLock() : lock.readLock());
+		l.lock();
+		try {
+			TernaryTreeNode<V> currentNode = getRoot();
+			int charIndex = 0;
+			if(charComparator == null && !create) {
+				char keyChar = key.charAt(0);
+				while(currentNode != null) {
+					final char splitChar = currentNode.getChar();
+					if(keyChar < splitChar) {
+						currentNode = currentNode.getLeft();
+					} else if(keyChar > splitChar) {
+						currentNode = currentNode.getRight();
+					} else {
+						if(++charIndex == keyLength)
+							return currentNode;
+						keyChar = key.charAt(charIndex);
+						currentNode = currentNode.getCenter();
+					}
+				}
+				return null;
+			}
+
+			TernaryTreeNode<V> prevNode = null;
+			Position lastPos = Position.EQUAL;
+			while(true) {
+				final char keyChar = key.charAt(charIndex);
+				if(currentNode == null) {
+					if(!create) return null;
+					final TernaryTreeNode<V> newNode = createNode(prevNode, keyChar);
 					if(prevNode == null)
 						root = newNode;
 					else
 						prevNode.setChild(newNode, lastPos);
 					currentNode = newNode;
+				}
+				prevNode = currentNode;
+			
+				final int cmp = CharComparator.compare(charComparator, keyChar, currentNode.getChar());
+				if(cmp == 0) {
+					if(++charIndex == keyLength)
+						return currentNode;
+					currentNode = currentNode.getCenter();
+					lastPos = Position.EQUAL;
+				} else if(cmp < 0) {
+					currentNode = currentNode.getLeft();
+					lastPos = Position.LOW;
 				} else {
-					break;			
+					currentNode = currentNode.getRight();
+					lastPos = Position.HIGH;
 				}
 			}
-			prevNode = currentNode;
-			
-			Character splitChar = currentNode.getChar();
-			Character c1 = (caseSensitive ? keyChar : Character.toLowerCase(keyChar));
-			Character c2 = (caseSensitive ? splitChar : Character.toLowerCase(splitChar));
-			int cmp = (comparator != null
-						? comparator.compare(c1, c2) 
-						: c1.compareTo(c2));
-			
-			if(cmp == 0) {
-				charIndex++;
-				if(charIndex == key.length()) {
-					retVal = currentNode;
-					break;
+		} finally {
+			l.unlock();
+		}
+	}
+
+	/*
+	 * Case-insensitive lookup.  Terminated nodes are preferred, then the node
+	 * matching key exactly, then the first node in key order.
+	 */
+	private Optional<TernaryTreeNode<V>> findNodeIgnoreCase(String key) {
+		lock.readLock().lock();
+		try {
+			final Set<TernaryTreeNode<V>> posting = (caseFoldedIndex != null ? caseFoldedIndex.get(lowerCase(key)) : null);
+			final Collection<TernaryTreeNode<V>> matches = (posting != null ? posting : findNodesIgnoreCase(key));
+			if(matches.size() == 1)
+				return Optional.of(matches.iterator().next());
+
+			TernaryTreeNode<V> retVal = null;
+			int terminatedCount = 0;
+			for(TernaryTreeNode<V> node:matches) {
+				if(node.isTerminated()) {
+					retVal = node;
+					++terminatedCount;
+				}
+			}
+			if(terminatedCount == 1)
+				return Optional.of(retVal);
+
+			// keys are only built when several case variants tie
+			final boolean terminated = (terminatedCount > 0);
+			retVal = null;
+			String retKey = null;
+			for(TernaryTreeNode<V> node:matches) {
+				if(node.isTerminated() != terminated) continue;
+				final String nodeKey = node.getPrefix();
+				if(nodeKey.equals(key))
+					return Optional.of(node);
+				if(retVal == null || compareKeys(nodeKey, retKey) < 0) {
+					retVal = node;
+					retKey = nodeKey;
+				}
+			}
+			return Optional.ofNullable(retVal);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Find all nodes with a key equal to the given key ignoring case.  Case
+	 * variants are not adjacent in tree order so each variant of each char
+	 * is searched for separately, must hold read lock.
+	 */
+	private List<TernaryTreeNode<V>> findNodesIgnoreCase(String key) {
+		List<TernaryTreeNode<V>> subtrees = Collections.singletonList(getRoot());
+		List<TernaryTreeNode<V>> matches = new ArrayList<>();
+		for(int charIndex = 0; charIndex < key.length(); charIndex++) {
+			final char[] variants = caseVariants(key.charAt(charIndex));
+			matches = new ArrayList<>();
+			for(TernaryTreeNode<V> subtree:subtrees) {
+				for(char variant:variants) {
+					TernaryTreeNode<V> node = subtree;
+					while(node != null) {
+						final int cmp = compareChars(variant, node.getChar());
+						if(cmp == 0) {
+							matches.add(node);
+							break;
+						}
+						node = (cmp < 0 ? node.getLeft() : node.getRight());
+					}
 				}
-				currentNode = currentNode.getCenter();
-				lastPos = Position.EQUAL;
-			} else if(cmp < 0) {
-				currentNode = currentNode.getLeft();
-				lastPos = Position.LOW;
-			} else if(cmp > 0) {
-				currentNode = currentNode.getRight();
-				lastPos = Position.HIGH;
 			}
+			if(charIndex + 1 < key.length()) {
+				subtrees = new ArrayList<>();
+				for(TernaryTreeNode<V> match:matches) {
+					if(match.getCenter() != null)
+						subtrees.add(match.getCenter());
+				}
+				if(subtrees.isEmpty()) return Collections.emptyList();
+			}
+		}
+		return matches;
+	}
+
+	/*
+	 * Distinct chars which lower case to the same char as ch
+	 */
+	private static char[] caseVariants(char ch) {
+		final char lower = Character.toLowerCase(ch);
+		final char[] candidates = { ch, lower, Character.toUpperCase(ch), Character.toTitleCase(ch),
+				Character.toUpperCase(lower), Character.toTitleCase(lower) };
+		int count = 0;
+		for(char candidate:candidates) {
+			if(Character.toLowerCase(candidate) != lower) continue;
+			boolean seen = false;
+			for(int i = 0; i < count && !seen; i++)
+				seen = (candidates[i] == candidate);
+			if(!seen)
+				candidates[count++] = candidate;
+		}
+		return Arrays.copyOf(candidates, count);
+	}
+
+	/*
+	 * Sort nodes by key
+	 */
+	private List<TernaryTreeNode<V>> sortNodes(List<TernaryTreeNode<V>> nodes) {
+		final List<Map.Entry<String, TernaryTreeNode<V>>> keyed = new ArrayList<>(nodes.size());
+		for(TernaryTreeNode<V> node:nodes)
+			keyed.add(new AbstractMap.SimpleImmutableEntry<>(node.getPrefix(), node));
+		keyed.sort(Map.Entry.comparingByKey(this::compareKeys));
+		final List<TernaryTreeNode<V>> retVal = new ArrayList<>(keyed.size());
+		for(Map.Entry<String, TernaryTreeNode<V>> entry:keyed)
+			retVal.add(entry.getValue());
+		return retVal;
+	}
+	
+	/* Internal Visitors */
+	private class KeyEndsWithVisitor extends EndsWithVisitor<Set<String>, V> {
+
+		final Set<String> keySet = new LinkedHashSet<String>();
+		
+		public KeyEndsWithVisitor(String txt, boolean caseSensitive) {
+			super(txt, caseSensitive);
+		}
+
+		@Override
+		public Set<String> getResult() {
+			return keySet;
+		}
+
+		@Override
+		public void accept(TernaryTreeNode<V> node) {
+			accept(node, node.getPrefix());
+		}
+
+		@Override
+		public void accept(TernaryTreeNode<V> node, CharSequence key) {
+			keySet.add(key.toString());
+		}
+		
+	}
+
+	private class ValuesForKeyEndsWithVisitor extends EndsWithVisitor<Collection<V>, V> {
+		
+		public ValuesForKeyEndsWithVisitor(String txt, boolean caseSensitive) {
+			super(txt, caseSensitive);
+		}
+		
+		private final Collection<V> values = new ArrayList<V>();
+		
+		@Override
+		public Collection<V> getResult() {
+			return values;
+		}
+		
+		@Override
+		public void accept(TernaryTreeNode<V> node) {
+			values.add(node.getValue());
+		}
+		
+	}
+	
+	private class EntriesForKeyEndsWithVisitor extends EndsWithVisitor<Set<Map.Entry<String, V>>, V> {
+		
+		private Set<Map.Entry<String, V>> entrySet = new LinkedHashSet<Map.Entry<String,V>>();
+		
+		public EntriesForKeyEndsWithVisitor(String txt, boolean caseSensitive) {
+			super(txt, caseSensitive);
+		}
+
+		@Override
+		public Set<java.util.Map.Entry<String, V>> getResult() {
+			return entrySet;
+		}
+
+		@Override
+		public void accept(TernaryTreeNode<V> node) {
+			accept(node, node.getPrefix());
+		}
+
+		@Override
+		public void accept(TernaryTreeNode<V> node, CharSequence key) {
+			entrySet.add(new Entry(key.toString(), node.getValue()));
 		}
 		
-		lock.unlock();
-		
-		return retVal == null ? Optional.empty() : Optional.of(retVal);
 	}
-	
-	/* Internal Visitors */
-	private class KeyEndsWithVisitor extends EndsWithVisitor<Set<String>, V> {
+
+	private class KeyContainsVisitor extends ContainsVisitor<Set<String>, V> {
 
 		final Set<String> keySet = new LinkedHashSet<String>();
-		
-		public KeyEndsWithVisitor(String txt, boolean caseSensitive) {
+
+		public KeyContainsVisitor(String txt, boolean caseSensitive) {
 			super(txt, caseSensitive);
 		}
 
@@ -458,36 +2317,41 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 
 		@Override
 		public void accept(TernaryTreeNode<V> node) {
-			keySet.add(node.getPrefix());
+			accept(node, node.getPrefix());
 		}
-		
+
+		@Override
+		public void accept(TernaryTreeNode<V> node, CharSequence key) {
+			keySet.add(key.toString());
+		}
+
 	}
 
-	private class ValuesForKeyEndsWithVisitor extends EndsWithVisitor<Collection<V>, V> {
-		
-		public ValuesForKeyEndsWithVisitor(String txt, boolean caseSensitive) {
+	private class ValuesForKeyContainsVisitor extends ContainsVisitor<Collection<V>, V> {
+
+		private final Collection<V> values = new ArrayList<V>();
+
+		public ValuesForKeyContainsVisitor(String txt, boolean caseSensitive) {
 			super(txt, caseSensitive);
 		}
-		
-		private final Collection<V> values = new ArrayList<V>();
-		
+
 		@Override
 		public Collection<V> getResult() {
 			return values;
 		}
-		
+
 		@Override
 		public void accept(TernaryTreeNode<V> node) {
 			values.add(node.getValue());
 		}
-		
+
 	}
-	
-	private class EntriesForKeyEndsWithVisitor extends EndsWithVisitor<Set<Map.Entry<String, V>>, V> {
-		
+
+	private class EntriesForKeyContainsVisitor extends ContainsVisitor<Set<Map.Entry<String, V>>, V> {
+
 		private Set<Map.Entry<String, V>> entrySet = new LinkedHashSet<Map.Entry<String,V>>();
-		
-		public EntriesForKeyEndsWithVisitor(String txt, boolean caseSensitive) {
+
+		public EntriesForKeyContainsVisitor(String txt, boolean caseSensitive) {
 			super(txt, caseSensitive);
 		}
 
@@ -498,9 +2362,365 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 
 		@Override
 		public void accept(TernaryTreeNode<V> node) {
-			entrySet.add(new Entry(node.getPrefix(), node.getValue()));
+			accept(node, node.getPrefix());
 		}
-		
+
+		@Override
+		public void accept(TernaryTreeNode<V> node, CharSequence key) {
+			entrySet.add(new Entry(key.toString(), node.getValue()));
+		}
+
+	}
+
+	/**
+	 * Spliterator over terminated nodes in key order.  Pending work is kept
+	 * as a deque of subtrees and entries with the next item first, splits
+	 * hand off the leading half of the deque so that each half remains a
+	 * contiguous range of keys.  Traversal is weakly consistent.
+	 */
+	private class TreeSpliterator<T> implements Spliterator<T> {
+
+		private final BiFunction<String, TernaryTreeNode<V>, T> mapper;
+
+		/* comparator for elements or null if elements are not sorted */
+		private final Comparator<? super T> comparator;
+
+		private final Deque<SpliteratorItem<V>> items = new ArrayDeque<>();
+
+		/*
+		 * Estimated number of remaining entries.  Entries may be added or
+		 * removed by other threads during traversal so the size is never
+		 * reported as exact.
+		 */
+		private long estimate;
+
+		TreeSpliterator(BiFunction<String, TernaryTreeNode<V>, T> mapper, Comparator<? super T> comparator, long estimate) {
+			this.mapper = mapper;
+			this.comparator = comparator;
+			this.estimate = (estimate >= 0 ? estimate : Long.MAX_VALUE);
+		}
+
+		/**
+		 * Spliterator over all entries in the tree
+		 */
+		TreeSpliterator(BiFunction<String, TernaryTreeNode<V>, T> mapper, Comparator<? super T> comparator) {
+			this(mapper, comparator, TernaryTree.this.size());
+			final TernaryTreeNode<V> root = getRoot();
+			addLast(root, "", true);
+			addLast(root.getLeft(), "", false);
+			addLast(root.getCenter(), String.valueOf(root.getChar()), false);
+			addLast(root.getRight(), "", false);
+		}
+
+		void addFirst(TernaryTreeNode<V> node, String key, boolean entry) {
+			if(node != null && (!entry || node.isTerminated()))
+				items.addFirst(new SpliteratorItem<>(node, key, entry));
+		}
+
+		void addLast(TernaryTreeNode<V> node, String key, boolean entry) {
+			if(node != null && (!entry || node.isTerminated()))
+				items.addLast(new SpliteratorItem<>(node, key, entry));
+		}
+
+		/*
+		 * Replace subtree at the head of the deque with its left subtree,
+		 * entry, center and right subtree
+		 */
+		private void expandFirst() {
+			final SpliteratorItem<V> item = items.pollFirst();
+			final TernaryTreeNode<V> node = item.node;
+			final String key = item.key + node.getChar();
+			addFirst(node.getRight(), item.key, false);
+			addFirst(node.getCenter(), key, false);
+			addFirst(node, key, true);
+			addFirst(node.getLeft(), item.key, false);
+		}
+
+		/*
+		 * The action is called without holding the lock so that it may
+		 * modify the tree
+		 */
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			T next = null;
+			lock.readLock().lock();
+			try {
+				while(next == null && !items.isEmpty()) {
+					if(items.peekFirst().entry) {
+						final SpliteratorItem<V> item = items.pollFirst();
+						// value may have been removed after the item was added
+						if(item.node.isTerminated()) {
+							if(estimate > 0 && estimate < Long.MAX_VALUE) --estimate;
+							next = mapper.apply(item.key, item.node);
+						}
+					} else {
+						expandFirst();
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			if(next == null) return false;
+			action.accept(next);
+			return true;
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			lock.readLock().lock();
+			try {
+				while(items.size() == 1 && !items.peekFirst().entry)
+					expandFirst();
+				if(items.size() < 2) return null;
+
+				final TreeSpliterator<T> retVal = new TreeSpliterator<>(mapper, comparator, -1L);
+				final int n = items.size() / 2;
+				for(int i = 0; i < n; i++)
+					retVal.items.addLast(items.pollFirst());
+				estimate = estimate >>> 1;
+				retVal.estimate = estimate;
+				return retVal;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public long estimateSize() {
+			return estimate;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL | (comparator != null ? SORTED | DISTINCT : 0);
+		}
+
+		@Override
+		public Comparator<? super T> getComparator() {
+			if(comparator == null)
+				throw new IllegalStateException();
+			return comparator;
+		}
+
+	}
+
+	private static final class SpliteratorItem<V> {
+
+		final TernaryTreeNode<V> node;
+
+		/* key of entry or prefix leading to subtree */
+		final String key;
+
+		final boolean entry;
+
+		SpliteratorItem(TernaryTreeNode<V> node, String key, boolean entry) {
+			this.node = node;
+			this.key = key;
+			this.entry = entry;
+		}
+
+	}
+
+	/* Views */
+	private abstract class TreeIterator<T> implements Iterator<T> {
+
+		private final TerminatedNodeIterator<V> itr = new TerminatedNodeIterator<>(TernaryTree.this);
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		protected TernaryTreeNode<V> nextNode() {
+			return itr.next();
+		}
+
+		/**
+		 * Key of node most recently returned by {@link #nextNode()}
+		 */
+		protected String currentKey() {
+			return itr.getCurrentKey().toString();
+		}
+
+		@Override
+		public void remove() {
+			itr.remove();
+		}
+
+	}
+
+	private class KeyIterator extends TreeIterator<String> {
+
+		@Override
+		public String next() {
+			nextNode();
+			return currentKey();
+		}
+
+	}
+
+	private class ValueIterator extends TreeIterator<V> {
+
+		@Override
+		public V next() {
+			return nextNode().getValue();
+		}
+
+	}
+
+	private class EntryIterator extends TreeIterator<Map.Entry<String, V>> {
+
+		@Override
+		public Map.Entry<String, V> next() {
+			final TernaryTreeNode<V> node = nextNode();
+			return new NodeEntry(currentKey(), node);
+		}
+
+	}
+
+	private class KeySet extends AbstractSet<String> {
+
+		@Override
+		public Iterator<String> iterator() {
+			return new KeyIterator();
+		}
+
+		@Override
+		public Spliterator<String> spliterator() {
+			return new TreeSpliterator<>((key, node) -> key, TernaryTree.this::compareKeys);
+		}
+
+		@Override
+		public int size() {
+			return TernaryTree.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o != null && containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return o != null && TernaryTree.this.remove(o) != null;
+		}
+
+		@Override
+		public void clear() {
+			TernaryTree.this.clear();
+		}
+
+	}
+
+	private class Values extends AbstractCollection<V> {
+
+		@Override
+		public Iterator<V> iterator() {
+			return new ValueIterator();
+		}
+
+		@Override
+		public Spliterator<V> spliterator() {
+			return new TreeSpliterator<>((key, node) -> node.getValue(), null);
+		}
+
+		@Override
+		public int size() {
+			return TernaryTree.this.size();
+		}
+
+		@Override
+		public void clear() {
+			TernaryTree.this.clear();
+		}
+
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String, V>> {
+
+		@Override
+		public Iterator<Map.Entry<String, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public Spliterator<Map.Entry<String, V>> spliterator() {
+			return new TreeSpliterator<>(NodeEntry::new, entryComparator());
+		}
+
+		@Override
+		public int size() {
+			return TernaryTree.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if(!(o instanceof Map.Entry)) return false;
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+			if(entry.getKey() == null) return false;
+			final Optional<TernaryTreeNode<V>> node = findNode(entry.getKey().toString());
+			return node.isPresent() && node.get().isTerminated()
+					&& Objects.equals(node.get().getValue(), entry.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if(!(o instanceof Map.Entry)) return false;
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+			if(entry.getKey() == null) return false;
+			lock.writeLock().lock();
+			try {
+				final Optional<TernaryTreeNode<V>> node = findNode(entry.getKey().toString());
+				if(node.isPresent() && node.get().isTerminated()
+						&& Objects.equals(node.get().getValue(), entry.getValue())) {
+					removeNode(node.get());
+					return true;
+				}
+				return false;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		@Override
+		public void clear() {
+			TernaryTree.this.clear();
+		}
+
+	}
+
+	/**
+	 * Entry backed by a tree node
+	 */
+	private class NodeEntry extends Entry {
+
+		private final TernaryTreeNode<V> node;
+
+		public NodeEntry(String key, TernaryTreeNode<V> node) {
+			super(key, null);
+			this.node = node;
+		}
+
+		@Override
+		public V getValue() {
+			return node.getValue();
+		}
+
+		@Override
+		public V setValue(V object) {
+			if(object == null)
+				throw new NullPointerException();
+			lock.writeLock().lock();
+			try {
+				// entry was removed, node may already be unlinked
+				if(!node.isTerminated())
+					throw new IllegalStateException("Entry no longer in tree");
+				return setNodeValue(node, object);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
 	}
 
 	private class Entry implements Map.Entry<String, V> {
@@ -530,9 +2750,121 @@ public class TernaryTree<V> implements Map<String, V>, Serializable {
 			this.value = object;
 			return oldVal;
 		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Map.Entry)) return false;
+			final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+			return Objects.equals(getKey(), entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
 		
 	}
 
+	/**
+	 * Range of sorted keys to be built as a sibling tree at the given
+	 * depth and attached to parent
+	 */
+	private static final class BuildTask<V> {
+
+		final int from;
+
+		final int to;
+
+		final int depth;
+
+		final TernaryTreeNode<V> parent;
+
+		final Position position;
+
+		BuildTask(int from, int to, int depth, TernaryTreeNode<V> parent, Position position) {
+			this.from = from;
+			this.to = to;
+			this.depth = depth;
+			this.parent = parent;
+			this.position = position;
+		}
+
+	}
+
+	/**
+	 * Node counts reported by {@link TernaryTree#compact()}
+	 */
+	public static final class CompactionResult {
+
+		private final int nodeCountBefore;
+
+		private final int nodeCountAfter;
+
+		CompactionResult(int nodeCountBefore, int nodeCountAfter) {
+			this.nodeCountBefore = nodeCountBefore;
+			this.nodeCountAfter = nodeCountAfter;
+		}
+
+		public int getNodeCountBefore() {
+			return nodeCountBefore;
+		}
+
+		public int getNodeCountAfter() {
+			return nodeCountAfter;
+		}
+
+		@Override
+		public String toString() {
+			return "nodes before: " + nodeCountBefore + ", nodes after: " + nodeCountAfter;
+		}
+
+	}
+
+	/**
+	 * Builder for trees, entries are collected and inserted using
+	 * {@link TernaryTree#bulkLoad(Iterator)}
+	 *
+	 * @param <V>
+	 */
+	public static class Builder<V> {
+
+		private Comparator<Character> comparator;
+
+		private final List<Map.Entry<String, V>> entries = new ArrayList<>();
+
+		public Builder() {
+			super();
+		}
+
+		public Builder<V> comparator(Comparator<Character> comparator) {
+			this.comparator = comparator;
+			return this;
+		}
+
+		public Builder<V> put(String key, V value) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+			return this;
+		}
+
+		public Builder<V> putAll(Map<? extends String, ? extends V> map) {
+			for(Map.Entry<? extends String, ? extends V> entry:map.entrySet())
+				put(entry.getKey(), entry.getValue());
+			return this;
+		}
+
+		public TernaryTree<V> build() {
+			final TernaryTree<V> retVal = new TernaryTree<>(comparator);
+			retVal.bulkLoad(entries.iterator());
+			return retVal;
+		}
+
+	}
+
 	private class TernaryTreeEmptyStringNode<V> extends TernaryTreeNode<V> {
 
 		public TernaryTreeEmptyStringNode(TernaryTreeNode<V> parent) {
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.function.BiFunction;
+
+import ca.hedlund.tst.TernaryTreeNode.Position;
+
+/**
+ * Streaming binary codec for ternary tree nodes.  Nodes are written in
+ * preorder, each node is a varint encoded char followed by a flags byte
+ * indicating which children follow and if the node has a value.  Values
+ * are written using a {@link TernaryTreeValueSerializer}.
+ *
+ * Both encoding and decoding use an explicit stack so that degenerate
+ * trees do not overflow the call stack.
+ *
+ * @param <V>
+ */
+final class TernaryTreeCodec<V> {
+
+	static final int VERSION = 1;
+
+	/**
+	 * Size written for trees which may be modified while writing,
+	 * the number of entries is not checked when reading
+	 */
+	static final int UNKNOWN_SIZE = -1;
+
+	private static final int TERMINATED = 0x01;
+
+	private static final int HAS_LEFT = 0x02;
+
+	private static final int HAS_CENTER = 0x04;
+
+	private static final int HAS_RIGHT = 0x08;
+
+	private final TernaryTreeValueSerializer<V> serializer;
+
+	TernaryTreeCodec(TernaryTreeValueSerializer<V> serializer) {
+		super();
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Write tree rooted at the given node
+	 *
+	 * @param out
+	 * @param root
+	 * @param size number of terminated nodes in tree or {@link #UNKNOWN_SIZE}
+	 * @throws IOException
+	 */
+	void write(DataOutput out, TernaryTreeNode<V> root, int size) throws IOException {
+		out.writeByte(VERSION);
+		writeVarInt(out, size);
+
+		final ArrayDeque<TernaryTreeNode<V>> stack = new ArrayDeque<>();
+		stack.push(root);
+		while(!stack.isEmpty()) {
+			final TernaryTreeNode<V> node = stack.pop();
+			final V value = node.getValue();
+			final TernaryTreeNode<V> left = node.getLeft();
+			final TernaryTreeNode<V> center = node.getCenter();
+			final TernaryTreeNode<V> right = node.getRight();
+
+			int flags = 0;
+			if(value != null) flags |= TERMINATED;
+			if(left != null) flags |= HAS_LEFT;
+			if(center != null) flags |= HAS_CENTER;
+			if(right != null) flags |= HAS_RIGHT;
+
+			writeVarInt(out, node.getChar());
+			out.writeByte(flags);
+			if(value != null)
+				serializer.write(out, value);
+
+			if(right != null) stack.push(right);
+			if(center != null) stack.push(center);
+			if(left != null) stack.push(left);
+		}
+	}
+
+	/**
+	 * Read nodes into the given root, the root should have no children.
+	 *
+	 * @param in
+	 * @param root
+	 * @return number of terminated nodes read
+	 * @throws IOException
+	 */
+	int read(DataInput in, TernaryTreeNode<V> root) throws IOException {
+		return read(in, root, TernaryTreeNode::new);
+	}
+
+	/**
+	 * Read nodes into the given root using a node factory
+	 *
+	 * @param in
+	 * @param root
+	 * @param nodeFactory creates a node given parent and char
+	 * @return number of terminated nodes read
+	 * @throws IOException
+	 */
+	int read(DataInput in, TernaryTreeNode<V> root,
+			BiFunction<TernaryTreeNode<V>, Character, TernaryTreeNode<V>> nodeFactory) throws IOException {
+		final int version = in.readUnsignedByte();
+		if(version != VERSION)
+			throw new StreamCorruptedException("Unsupported tree version " + version);
+		final int size = readVarInt(in);
+
+		// stack of parent/position pairs for children still to be read
+		final ArrayDeque<TernaryTreeNode<V>> parents = new ArrayDeque<>();
+		final ArrayDeque<Position> positions = new ArrayDeque<>();
+		int terminated = 0;
+		TernaryTreeNode<V> node = root;
+		while(true) {
+			final char ch = (char)readVarInt(in);
+			final int flags = in.readUnsignedByte();
+			if(node == root) {
+				if(ch != root.getChar())
+					throw new StreamCorruptedException("Invalid root node");
+			} else {
+				node.setChar(ch);
+			}
+			if((flags & TERMINATED) != 0) {
+				node.setValue(serializer.read(in));
+				++terminated;
+			}
+
+			if((flags & HAS_RIGHT) != 0) {
+				parents.push(node);
+				positions.push(Position.HIGH);
+			}
+			if((flags & HAS_CENTER) != 0) {
+				parents.push(node);
+				positions.push(Position.EQUAL);
+			}
+			if((flags & HAS_LEFT) != 0) {
+				parents.push(node);
+				positions.push(Position.LOW);
+			}
+
+			if(parents.isEmpty()) break;
+			final TernaryTreeNode<V> parent = parents.pop();
+			node = nodeFactory.apply(parent, '\u0000');
+			parent.setChild(node, positions.pop());
+		}
+		if(size != UNKNOWN_SIZE && terminated != size)
+			throw new StreamCorruptedException("Expected " + size + " entries, read " + terminated);
+		return terminated;
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		while((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0)
+				return value;
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+}
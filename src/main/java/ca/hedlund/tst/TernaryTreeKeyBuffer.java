@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.util.Arrays;
+
+/**
+ * Shared, growable key buffer used during tree traversal.  Characters
+ * are pushed when moving to a center child and popped when returning
+ * so that the key for the current node is always available without
+ * walking parent links.
+ */
+final class TernaryTreeKeyBuffer implements CharSequence {
+
+	private char[] chars;
+
+	private int length = 0;
+
+	TernaryTreeKeyBuffer() {
+		this(16);
+	}
+
+	TernaryTreeKeyBuffer(int capacity) {
+		this.chars = new char[Math.max(capacity, 1)];
+	}
+
+	TernaryTreeKeyBuffer(CharSequence prefix) {
+		this(prefix.length() + 16);
+		append(prefix);
+	}
+
+	void push(char ch) {
+		if(length == chars.length)
+			chars = Arrays.copyOf(chars, chars.length * 2);
+		chars[length++] = ch;
+	}
+
+	void pop() {
+		--length;
+	}
+
+	void append(CharSequence seq) {
+		for(int i = 0; i < seq.length(); i++)
+			push(seq.charAt(i));
+	}
+
+	void setLength(int length) {
+		if(length > chars.length)
+			chars = Arrays.copyOf(chars, Math.max(length, chars.length * 2));
+		this.length = length;
+	}
+
+	void set(int index, char ch) {
+		chars[index] = ch;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException(index);
+		return chars[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+
+	/**
+	 * Does seq end with the given suffix
+	 */
+	static boolean endsWith(CharSequence seq, String suffix, boolean caseSensitive) {
+		final int offset = seq.length() - suffix.length();
+		return offset >= 0 && regionMatches(seq, offset, suffix, caseSensitive);
+	}
+
+	/**
+	 * Does seq contain the given infix
+	 */
+	static boolean contains(CharSequence seq, String infix, boolean caseSensitive) {
+		final int last = seq.length() - infix.length();
+		for(int i = 0; i <= last; i++) {
+			if(regionMatches(seq, i, infix, caseSensitive))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean regionMatches(CharSequence seq, int offset, String txt, boolean caseSensitive) {
+		for(int i = 0; i < txt.length(); i++) {
+			final char c1 = seq.charAt(offset + i);
+			final char c2 = txt.charAt(i);
+			if(c1 != c2 && (caseSensitive || Character.toLowerCase(c1) != Character.toLowerCase(c2)))
+				return false;
+		}
+		return true;
+	}
+
+}
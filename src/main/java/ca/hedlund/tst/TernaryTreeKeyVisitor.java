@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+/**
+ * Path-aware tree node visitor.  The key for each visited node is
+ * built incrementally during traversal and provided to the visitor.
+ *
+ * @param <V>
+ */
+@FunctionalInterface
+public interface TernaryTreeKeyVisitor<V> {
+
+	/**
+	 * Accept the given tree node
+	 *
+	 * @param node
+	 * @param key full key for node, the contents of this sequence are
+	 *  only valid for the duration of the call
+	 * @return <code>true</code> if this visit should stop when
+	 *  the visit order supports it
+	 */
+	public boolean visit(TernaryTreeNode<V> node, CharSequence key);
+
+}
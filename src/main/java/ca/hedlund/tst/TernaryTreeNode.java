@@ -16,6 +16,9 @@
 package ca.hedlund.tst;
 
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 
 /**
  * Node for ternary trees.
@@ -26,6 +29,17 @@ public class TernaryTreeNode<V> implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/*
+	 * Traversal states
+	 */
+	private static final int VISIT_ENTER = 0;
+
+	private static final int VISIT_CENTER = 1;
+
+	private static final int VISIT_RIGHT = 2;
+
+	private static final int VISIT_EXIT = 3;
+
 	public enum Position {
 		LOW,
 		EQUAL,
@@ -46,23 +60,46 @@ public class TernaryTreeNode<V> implements Serializable {
 	 * Node value, a node is 'terminated' if it's
 	 * value is non-<code>null</code>.
 	 */
-	private V value;
+	private volatile V value;
 
 
 	/**
 	 * Atomic reference to left child
 	 */
-	private TernaryTreeNode<V> left;
+	private volatile TernaryTreeNode<V> left;
 
 	/**
 	 * Atomic reference to right child
 	 */
-	private TernaryTreeNode<V> right;
+	private volatile TernaryTreeNode<V> right;
 	
 	/**
 	 * Atomic reference to center child
 	 */
-	private TernaryTreeNode<V> center;
+	private volatile TernaryTreeNode<V> center;
+
+	/*
+	 * Var handles used for compare-and-set operations
+	 */
+	private static final VarHandle VALUE;
+
+	private static final VarHandle LEFT;
+
+	private static final VarHandle RIGHT;
+
+	private static final VarHandle CENTER;
+
+	static {
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			VALUE = lookup.findVarHandle(TernaryTreeNode.class, "value", Object.class);
+			LEFT = lookup.findVarHandle(TernaryTreeNode.class, "left", TernaryTreeNode.class);
+			RIGHT = lookup.findVarHandle(TernaryTreeNode.class, "right", TernaryTreeNode.class);
+			CENTER = lookup.findVarHandle(TernaryTreeNode.class, "center", TernaryTreeNode.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
 	
 	/**
 	 * Constructor
@@ -122,6 +159,26 @@ public class TernaryTreeNode<V> implements Serializable {
 		return oldVal;
 	}
 
+	/**
+	 * Atomically set the node's value if the current value
+	 * is <code>expect</code>
+	 *
+	 * @param expect
+	 * @param value
+	 * @return <code>true</code> if successful
+	 */
+	boolean compareAndSetValue(V expect, V value) {
+		return VALUE.compareAndSet(this, expect, value);
+	}
+
+	/**
+	 * Atomically set the node's value and return the old value
+	 */
+	@SuppressWarnings("unchecked")
+	V getAndSetValue(V value) {
+		return (V)VALUE.getAndSet(this, value);
+	}
+
 	/**
 	 * Get left child
 	 */
@@ -186,6 +243,31 @@ public class TernaryTreeNode<V> implements Serializable {
 		}
 	}
 	
+	/**
+	 * Atomically set the child at the given position if the current
+	 * child is <code>expect</code>
+	 *
+	 * @param expect
+	 * @param child
+	 * @param pos
+	 * @return <code>true</code> if successful
+	 */
+	boolean compareAndSetChild(TernaryTreeNode<V> expect, TernaryTreeNode<V> child, Position pos) {
+		switch(pos) {
+		case LOW:
+			return LEFT.compareAndSet(this, expect, child);
+
+		case EQUAL:
+			return CENTER.compareAndSet(this, expect, child);
+
+		case HIGH:
+			return RIGHT.compareAndSet(this, expect, child);
+
+		default:
+			return false;
+		}
+	}
+	
 	/**
 	 * Returns the full string key for this node
 	 *
@@ -208,37 +290,172 @@ public class TernaryTreeNode<V> implements Serializable {
 	}
 	
 	/**
-	 * Accept a tree node visitor.
+	 * Accept a tree node visitor.  Nodes are visited after their left,
+	 * center and right subtrees.
 	 */
 	public void acceptVisitLast(TernaryTreeNodeVisitor<V> visitor) {
-		if(getLeft() != null)
-			getLeft().acceptVisitLast(visitor);
-		if(getCenter() != null)
-			getCenter().acceptVisitLast(visitor);
-		if(getRight() != null)
-			getRight().acceptVisitLast(visitor);
-		visitor.visit(this);
+		traverse(visitor, null, null, true);
 	}
 	
+	/**
+	 * Accept a tree node visitor.  Nodes are visited before their subtrees,
+	 * subtrees are skipped if the visitor returns <code>true</code>.
+	 */
 	public void acceptVisitFirst(TernaryTreeNodeVisitor<V> visitor) {
-		if(!visitor.visit(this)) {
-			if(getLeft() != null)
-				getLeft().acceptVisitFirst(visitor);
-			if(getCenter() != null)
-				getCenter().acceptVisitFirst(visitor);
-			if(getRight() != null)
-				getRight().acceptVisitFirst(visitor);
+		final TraversalStack<V> stack = new TraversalStack<>();
+		stack.push(this, 0);
+		while(stack.size > 0) {
+			final TernaryTreeNode<V> node = stack.node();
+			stack.pop();
+			if(!visitor.visit(node)) {
+				if(node.getRight() != null)
+					stack.push(node.getRight(), 0);
+				if(node.getCenter() != null)
+					stack.push(node.getCenter(), 0);
+				if(node.getLeft() != null)
+					stack.push(node.getLeft(), 0);
+			}
 		}
 	}
 	
+	/**
+	 * Accept a tree node visitor.  Nodes are visited after their left
+	 * subtree and before their center and right subtrees, i.e., in key order.
+	 */
 	public void acceptVisitMiddle(TernaryTreeNodeVisitor<V> visitor) {
-		if(getLeft() != null)
-			getLeft().acceptVisitMiddle(visitor);
-		visitor.visit(this);
-		if(getCenter() != null)
-			getCenter().acceptVisitMiddle(visitor);
-		if(getRight() != null)
-			getRight().acceptVisitMiddle(visitor);
+		traverse(visitor, null, null, false);
+	}
+	
+	/**
+	 * Accept a path-aware visitor.  Keys are built incrementally
+	 * in a shared buffer during traversal.
+	 *
+	 * @param visitor
+	 */
+	public void acceptVisitMiddle(TernaryTreeKeyVisitor<V> visitor) {
+		final String prefix = (isRoot() ? "" : getPrefix());
+		acceptVisitMiddle(visitor, prefix.isEmpty() ? prefix : prefix.substring(0, prefix.length() - 1));
+	}
+
+	/**
+	 * Accept a path-aware visitor.
+	 *
+	 * @param visitor
+	 * @param prefix key of the path leading to this node, not including
+	 *  the char of this node
+	 */
+	public void acceptVisitMiddle(TernaryTreeKeyVisitor<V> visitor, CharSequence prefix) {
+		acceptVisitMiddle(visitor, new TernaryTreeKeyBuffer(prefix));
+	}
+
+	void acceptVisitMiddle(TernaryTreeKeyVisitor<V> visitor, TernaryTreeKeyBuffer buffer) {
+		traverse(null, visitor, buffer, false);
+	}
+
+	/*
+	 * Depth-first traversal using an explicit stack so that deep or
+	 * skewed trees do not overflow the thread stack.  Each frame moves
+	 * through the states below, the right subtree replaces the frame of
+	 * its parent unless the parent is visited last.
+	 *
+	 *  VISIT_ENTER - push left subtree, the root is visited first
+	 *  VISIT_CENTER - visit in key order, push center subtree
+	 *  VISIT_RIGHT - push right subtree
+	 *  VISIT_EXIT - visit last
+	 */
+	private void traverse(TernaryTreeNodeVisitor<V> visitor, TernaryTreeKeyVisitor<V> keyVisitor,
+			TernaryTreeKeyBuffer buffer, boolean visitLast) {
+		final TraversalStack<V> stack = new TraversalStack<>();
+		stack.push(this, VISIT_ENTER);
+		while(stack.size > 0) {
+			final TernaryTreeNode<V> node = stack.node();
+			switch(stack.state()) {
+			case VISIT_ENTER:
+				stack.setState(VISIT_CENTER);
+				// the empty key of the root precedes keys in its left subtree
+				if(node.isRoot() && !visitLast) {
+					if(buffer != null)
+						keyVisitor.visit(node, "");
+					else
+						visitor.visit(node);
+				}
+				if(node.getLeft() != null)
+					stack.push(node.getLeft(), VISIT_ENTER);
+				break;
+
+			case VISIT_CENTER:
+				stack.setState(VISIT_RIGHT);
+				if(buffer != null) {
+					buffer.push(node.getChar());
+					if(!node.isRoot())
+						keyVisitor.visit(node, buffer);
+				} else if(!visitLast && !node.isRoot()) {
+					visitor.visit(node);
+				}
+				if(node.getCenter() != null)
+					stack.push(node.getCenter(), VISIT_ENTER);
+				break;
+
+			case VISIT_RIGHT:
+				if(buffer != null)
+					buffer.pop();
+				if(visitLast) {
+					stack.setState(VISIT_EXIT);
+					if(node.getRight() != null)
+						stack.push(node.getRight(), VISIT_ENTER);
+				} else {
+					stack.pop();
+					if(node.getRight() != null)
+						stack.push(node.getRight(), VISIT_ENTER);
+				}
+				break;
+
+			default:
+				stack.pop();
+				visitor.visit(node);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Stack of nodes and traversal states backed by arrays
+	 */
+	private static final class TraversalStack<V> {
+
+		private Object[] nodes = new Object[32];
+
+		private int[] states = new int[32];
+
+		private int size = 0;
+
+		void push(TernaryTreeNode<V> node, int state) {
+			if(size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				states = Arrays.copyOf(states, size * 2);
+			}
+			nodes[size] = node;
+			states[size] = state;
+			++size;
+		}
+
+		void pop() {
+			nodes[--size] = null;
+		}
+
+		@SuppressWarnings("unchecked")
+		TernaryTreeNode<V> node() {
+			return (TernaryTreeNode<V>)nodes[size - 1];
+		}
+
+		int state() {
+			return states[size - 1];
+		}
+
+		void setState(int state) {
+			states[size - 1] = state;
+		}
+
 	}
 	
 	public void acceptVisitOnlyCenter(TernaryTreeNodeVisitor<V> visitor) {
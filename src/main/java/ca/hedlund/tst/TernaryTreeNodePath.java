@@ -2,6 +2,7 @@ package ca.hedlund.tst;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.IntBinaryOperator;
 
 /**
  * A path within a ternary tree.
@@ -13,11 +14,11 @@ public class TernaryTreeNodePath implements Serializable {
 
 	private final static byte END_PATH = 0x00;
 
-	private final static byte LEFT_CHILD = 0x01;
+	final static byte LEFT_CHILD = 0x01;
 
-	private final static byte RIGHT_CHILD = 0x02;
+	final static byte RIGHT_CHILD = 0x02;
 
-	private final static byte CENTER_CHILD = 0x03;
+	final static byte CENTER_CHILD = 0x03;
 
 	private final static int PATH_MASK = 0x0003;
 
@@ -122,4 +123,29 @@ public class TernaryTreeNodePath implements Serializable {
 		return Optional.of(retVal);
 	}
 
+	/**
+	 * Follow path from given node index using an accessor for child
+	 * indices.  Used by array backed trees.
+	 *
+	 * @param root
+	 * @param childAccessor given a node index and a movement returns the
+	 *  child index or a negative value if no child exists
+	 * @return node index or <code>-1</code> if not found
+	 */
+	int followPath(int root, IntBinaryOperator childAccessor) {
+		int retVal = root;
+		for(int i = 0; i < this.path.length - 1; i++) {
+			byte b = this.path[i];
+			for(int shift = 0; shift < 8; shift += 2) {
+				byte movement = (byte)((b >> shift) & PATH_MASK);
+				if(movement != END_PATH) {
+					retVal = childAccessor.applyAsInt(retVal, movement);
+					if(retVal < 0)
+						return -1;
+				}
+			}
+		}
+		return retVal;
+	}
+
 }
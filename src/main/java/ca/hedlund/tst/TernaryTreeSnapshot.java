@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * <p>Read-only ternary search tree served directly from a memory-mapped
+ * file.  Snapshots are written using {@link TernaryTree#writeSnapshot(Path, TernaryTreeValueSerializer)}
+ * and opened with {@link #open(Path, TernaryTreeValueSerializer)}.  Opening a
+ * snapshot does not deserialize the tree, nodes are read from the mapped file
+ * on demand and values are decoded when requested.  Since the file is mapped
+ * the page cache is shared between all processes using the same snapshot.</p>
+ *
+ * <p>File layout (big-endian):
+ * <pre>
+ * header    64 bytes: magic, version, flags, node count, entry count,
+ *           values offset, value offsets table offset
+ * nodes     20 bytes per node: char, reserved, left, center, right, value index
+ * values    serialized values
+ * offsets   (entry count + 1) longs, offset of each value in file
+ * </pre>
+ * Node <code>0</code> is the root and represents the empty string, a child
+ * index of <code>0</code> means no child.  A value index of <code>-1</code>
+ * means the node is not terminated.</p>
+ *
+ * <p>Snapshots hold no resources which need to be closed, the file is
+ * unmapped when the snapshot (and any views or iterators) are no longer
+ * reachable and the mapped buffers are garbage collected.  On some
+ * platforms the file cannot be deleted or replaced until then.</p>
+ *
+ * @param <V>
+ */
+public final class TernaryTreeSnapshot<V> extends AbstractMap<String, V> {
+
+	private static final int MAGIC = 0x54535453;
+
+	private static final int VERSION = 1;
+
+	private static final int FLAG_COMPARATOR = 0x01;
+
+	private static final int HEADER_SIZE = 64;
+
+	/**
+	 * Number of nodes checked against the comparator when opening
+	 */
+	private static final int ORDER_CHECK_NODES = 1024;
+
+	private static final int NODE_SIZE = 20;
+
+	private static final int NODES_PER_CHUNK = 1 << 25;
+
+	private static final int OFFSETS_PER_CHUNK = 1 << 27;
+
+	private static final int VALUE_CHUNK_SIZE = 1 << 30;
+
+	private static final int ROOT = 0;
+
+	private static final int NONE = -1;
+
+	private final MappedRegion nodes;
+
+	private final MappedRegion values;
+
+	private final MappedRegion offsets;
+
+	private final int nodeCount;
+
+	private final int entryCount;
+
+	private final TernaryTreeValueSerializer<V> serializer;
+
+	private final Comparator<Character> comparator;
+
+	private final NodeStore nodeStore = new NodeStore();
+
+	private transient Set<Map.Entry<String, V>> entrySet;
+
+	/**
+	 * Open snapshot for a tree using natural char ordering
+	 *
+	 * @param file
+	 * @param serializer
+	 * @return snapshot
+	 * @throws IOException
+	 */
+	public static <V> TernaryTreeSnapshot<V> open(Path file, TernaryTreeValueSerializer<V> serializer) throws IOException {
+		return open(file, serializer, null);
+	}
+
+	/**
+	 * Open snapshot
+	 *
+	 * @param file
+	 * @param serializer
+	 * @param comparator comparator used by the tree the snapshot was written from
+	 * @return snapshot
+	 * @throws IOException if the file is not a snapshot or was written using
+	 *  a different comparator
+	 */
+	public static <V> TernaryTreeSnapshot<V> open(Path file, TernaryTreeValueSerializer<V> serializer,
+			Comparator<Character> comparator) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while(header.hasRemaining()) {
+				if(channel.read(header, header.position()) < 0)
+					throw new IOException("Invalid snapshot file: " + file);
+			}
+			header.flip();
+			if(header.getInt(0) != MAGIC)
+				throw new IOException("Invalid snapshot file: " + file);
+			if(header.getInt(4) != VERSION)
+				throw new IOException("Unsupported snapshot version " + header.getInt(4));
+			if(((header.getInt(8) & FLAG_COMPARATOR) != 0) != (comparator != null))
+				throw new IOException("Snapshot was written " + (comparator == null ? "with" : "without") + " a comparator");
+			final int nodeCount = header.getInt(12);
+			final int entryCount = header.getInt(16);
+			final long valuesOffset = header.getLong(24);
+			final long offsetsOffset = header.getLong(32);
+
+			final MappedRegion nodes = new MappedRegion(channel, HEADER_SIZE, (long)nodeCount * NODE_SIZE, NODES_PER_CHUNK * NODE_SIZE);
+			final MappedRegion values = new MappedRegion(channel, valuesOffset, offsetsOffset - valuesOffset, VALUE_CHUNK_SIZE);
+			final MappedRegion offsets = new MappedRegion(channel, offsetsOffset, (entryCount + 1L) * Long.BYTES, OFFSETS_PER_CHUNK * Long.BYTES);
+			final TernaryTreeSnapshot<V> retVal = new TernaryTreeSnapshot<>(nodes, values, offsets, nodeCount, entryCount, serializer, comparator);
+			if(!retVal.checkSiblingOrder(ORDER_CHECK_NODES))
+				throw new IOException("Snapshot was written using a different comparator");
+			return retVal;
+		}
+	}
+
+	/**
+	 * Write snapshot of tree rooted at the given node.  The tree must not
+	 * be modified while writing.
+	 *
+	 * @param root
+	 * @param comparator
+	 * @param file
+	 * @param serializer
+	 * @throws IOException
+	 */
+	static <V> void write(TernaryTreeNode<V> root, Comparator<Character> comparator,
+			Path file, TernaryTreeValueSerializer<V> serializer) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			out.write(new byte[HEADER_SIZE]);
+
+			// nodes are numbered in breadth-first order so that records
+			// can be written in index order
+			final ArrayDeque<TernaryTreeNode<V>> queue = new ArrayDeque<>();
+			queue.add(root);
+			int nextIndex = 1;
+			int nodeCount = 0;
+			int entryCount = 0;
+			while(!queue.isEmpty()) {
+				final TernaryTreeNode<V> node = queue.poll();
+				int left = 0, center = 0, right = 0;
+				if(node.getLeft() != null) {
+					left = nextIndex++;
+					queue.add(node.getLeft());
+				}
+				if(node.getCenter() != null) {
+					center = nextIndex++;
+					queue.add(node.getCenter());
+				}
+				if(node.getRight() != null) {
+					right = nextIndex++;
+					queue.add(node.getRight());
+				}
+				if(nextIndex < 0)
+					throw new IOException("Too many nodes for snapshot");
+				out.writeChar(node.getChar());
+				out.writeShort(0);
+				out.writeInt(left);
+				out.writeInt(center);
+				out.writeInt(right);
+				out.writeInt(node.isTerminated() ? entryCount++ : NONE);
+				++nodeCount;
+			}
+
+			// values in the same order
+			final long valuesOffset = HEADER_SIZE + (long)nodeCount * NODE_SIZE;
+			final long[] valueOffsets = new long[entryCount + 1];
+			final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+			final DataOutputStream valueOut = new DataOutputStream(valueBytes);
+			long position = valuesOffset;
+			int valueIndex = 0;
+			queue.add(root);
+			while(!queue.isEmpty()) {
+				final TernaryTreeNode<V> node = queue.poll();
+				if(node.getLeft() != null) queue.add(node.getLeft());
+				if(node.getCenter() != null) queue.add(node.getCenter());
+				if(node.getRight() != null) queue.add(node.getRight());
+				if(node.isTerminated()) {
+					valueBytes.reset();
+					serializer.write(valueOut, node.getValue());
+					valueOut.flush();
+					valueOffsets[valueIndex++] = position;
+					valueBytes.writeTo(out);
+					position += valueBytes.size();
+				}
+			}
+			valueOffsets[entryCount] = position;
+
+			final long offsetsOffset = position;
+			for(long offset:valueOffsets)
+				out.writeLong(offset);
+			out.flush();
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(comparator != null ? FLAG_COMPARATOR : 0);
+			header.putInt(nodeCount);
+			header.putInt(entryCount);
+			header.putInt(0);
+			header.putLong(valuesOffset);
+			header.putLong(offsetsOffset);
+			header.flip();
+			long headerPos = 0;
+			while(header.hasRemaining())
+				headerPos += channel.write(header, headerPos);
+		}
+	}
+
+	private TernaryTreeSnapshot(MappedRegion nodes, MappedRegion values, MappedRegion offsets,
+			int nodeCount, int entryCount, TernaryTreeValueSerializer<V> serializer, Comparator<Character> comparator) {
+		super();
+		this.nodes = nodes;
+		this.values = values;
+		this.offsets = offsets;
+		this.nodeCount = nodeCount;
+		this.entryCount = entryCount;
+		this.serializer = serializer;
+		this.comparator = comparator;
+	}
+
+	/**
+	 * Number of nodes in snapshot
+	 *
+	 * @return node count
+	 */
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	private char getChar(int node) {
+		return nodes.getChar((long)node * NODE_SIZE);
+	}
+
+	private int getLeft(int node) {
+		return nodes.getInt((long)node * NODE_SIZE + 4);
+	}
+
+	private int getCenter(int node) {
+		return nodes.getInt((long)node * NODE_SIZE + 8);
+	}
+
+	private int getRight(int node) {
+		return nodes.getInt((long)node * NODE_SIZE + 12);
+	}
+
+	private int getValueIndex(int node) {
+		return nodes.getInt((long)node * NODE_SIZE + 16);
+	}
+
+	private boolean isTerminated(int node) {
+		return getValueIndex(node) != NONE;
+	}
+
+	private V getValue(int node) {
+		final int valueIndex = getValueIndex(node);
+		if(valueIndex == NONE) return null;
+		final long start = offsets.getLong((long)valueIndex * Long.BYTES);
+		final long end = offsets.getLong((valueIndex + 1L) * Long.BYTES);
+		final byte[] bytes = new byte[(int)(end - start)];
+		values.get(start - values.offset, bytes);
+		try {
+			return serializer.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private int compare(char c1, char c2) {
+		return CharComparator.compare(comparator, c1, c2);
+	}
+
+	/*
+	 * Check order of left and right children for the first nodes, the file
+	 * only records whether a comparator was used
+	 */
+	private boolean checkSiblingOrder(int maxNodes) {
+		final int n = Math.min(nodeCount, maxNodes);
+		for(int node = ROOT; node < n; node++) {
+			final int left = getLeft(node);
+			if(left != ROOT && compare(getChar(left), getChar(node)) >= 0)
+				return false;
+			final int right = getRight(node);
+			if(right != ROOT && compare(getChar(right), getChar(node)) <= 0)
+				return false;
+		}
+		return true;
+	}
+
+	private int findNode(String key) {
+		if(key.length() == 0) return ROOT;
+
+		int node = ROOT;
+		int charIndex = 0;
+		while(true) {
+			final int cmp = compare(key.charAt(charIndex), getChar(node));
+			if(cmp == 0) {
+				if(++charIndex == key.length())
+					return node;
+				node = getCenter(node);
+			} else {
+				node = (cmp < 0 ? getLeft(node) : getRight(node));
+			}
+			if(node == 0)
+				return NONE;
+		}
+	}
+
+	@Override
+	public int size() {
+		return entryCount;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return entryCount == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		final int node = findNode(key.toString());
+		return node != NONE && isTerminated(node);
+	}
+
+	@Override
+	public V get(Object key) {
+		final int node = findNode(key.toString());
+		return (node == NONE ? null : getValue(node));
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		Set<Map.Entry<String, V>> retVal = entrySet;
+		if(retVal == null) {
+			retVal = new AbstractSet<Map.Entry<String,V>>() {
+
+				@Override
+				public Iterator<Map.Entry<String, V>> iterator() {
+					final IndexedNodeIterator itr = new IndexedNodeIterator(nodeStore, ROOT, "", n -> isTerminated(n));
+					return new Iterator<Map.Entry<String,V>>() {
+
+						@Override
+						public boolean hasNext() {
+							return itr.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, V> next() {
+							final int node = itr.next();
+							return new AbstractMap.SimpleImmutableEntry<>(itr.currentKey().toString(), getValue(node));
+						}
+
+					};
+				}
+
+				@Override
+				public int size() {
+					return entryCount;
+				}
+
+			};
+			entrySet = retVal;
+		}
+		return retVal;
+	}
+
+	public Set<String> keysWithPrefix(String prefix) {
+		final LinkedHashSet<String> retVal = new LinkedHashSet<>();
+		final int node = findNode(prefix);
+		if(node != NONE) {
+			final IndexedNodeIterator itr = new IndexedNodeIterator(nodeStore, node, prefix, n -> isTerminated(n));
+			while(itr.hasNext()) {
+				itr.next();
+				retVal.add(itr.currentKey().toString());
+			}
+		}
+		return retVal;
+	}
+
+	public Collection<V> valuesWithPrefix(String prefix) {
+		final List<V> retVal = new ArrayList<>();
+		final int node = findNode(prefix);
+		if(node != NONE) {
+			final IndexedNodeIterator itr = new IndexedNodeIterator(nodeStore, node, prefix, n -> isTerminated(n));
+			while(itr.hasNext()) {
+				retVal.add(getValue(itr.next()));
+			}
+		}
+		return retVal;
+	}
+
+	public Set<String> keysEndingWith(String suffix) {
+		return keysEndingWith(suffix, true);
+	}
+
+	public Set<String> keysEndingWith(String suffix, boolean caseSensitive) {
+		final LinkedHashSet<String> retVal = new LinkedHashSet<>();
+		if(suffix.length() == 0) return retVal;
+		final IndexedNodeIterator itr = new IndexedNodeIterator(nodeStore, ROOT, "", n -> isTerminated(n));
+		while(itr.hasNext()) {
+			itr.next();
+			final CharSequence key = itr.currentKey();
+			if(TernaryTreeKeyBuffer.endsWith(key, suffix, caseSensitive))
+				retVal.add(key.toString());
+		}
+		return retVal;
+	}
+
+	public Set<String> keysContaining(String infix) {
+		return keysContaining(infix, true);
+	}
+
+	public Set<String> keysContaining(String infix, boolean caseSensitive) {
+		final LinkedHashSet<String> retVal = new LinkedHashSet<>();
+		if(infix.length() == 0) return retVal;
+		final IndexedNodeIterator itr = new IndexedNodeIterator(nodeStore, ROOT, "", n -> isTerminated(n));
+		while(itr.hasNext()) {
+			itr.next();
+			final CharSequence key = itr.currentKey();
+			if(TernaryTreeKeyBuffer.contains(key, infix, caseSensitive))
+				retVal.add(key.toString());
+		}
+		return retVal;
+	}
+
+	/**
+	 * Node accessors used by {@link IndexedNodeIterator}
+	 */
+	private final class NodeStore implements IndexedNodeStore {
+
+		@Override
+		public char getChar(int node) {
+			return TernaryTreeSnapshot.this.getChar(node);
+		}
+
+		@Override
+		public int getLeft(int node) {
+			return TernaryTreeSnapshot.this.getLeft(node);
+		}
+
+		@Override
+		public int getCenter(int node) {
+			return TernaryTreeSnapshot.this.getCenter(node);
+		}
+
+		@Override
+		public int getRight(int node) {
+			return TernaryTreeSnapshot.this.getRight(node);
+		}
+
+	}
+
+	/**
+	 * Region of a file mapped in fixed size chunks.  Values read using
+	 * {@link #getChar(long)}, {@link #getInt(long)} and {@link #getLong(long)}
+	 * must not cross chunk boundaries.
+	 */
+	private static final class MappedRegion {
+
+		private final long offset;
+
+		private final int chunkSize;
+
+		private final MappedByteBuffer[] chunks;
+
+		MappedRegion(FileChannel channel, long offset, long length, int chunkSize) throws IOException {
+			this.offset = offset;
+			this.chunkSize = chunkSize;
+			final int numChunks = (int)((length + chunkSize - 1) / chunkSize);
+			this.chunks = new MappedByteBuffer[numChunks];
+			for(int i = 0; i < numChunks; i++) {
+				final long chunkOffset = (long)i * chunkSize;
+				final long chunkLength = Math.min(chunkSize, length - chunkOffset);
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + chunkOffset, chunkLength);
+			}
+		}
+
+		char getChar(long pos) {
+			return chunks[(int)(pos / chunkSize)].getChar((int)(pos % chunkSize));
+		}
+
+		int getInt(long pos) {
+			return chunks[(int)(pos / chunkSize)].getInt((int)(pos % chunkSize));
+		}
+
+		long getLong(long pos) {
+			return chunks[(int)(pos / chunkSize)].getLong((int)(pos % chunkSize));
+		}
+
+		void get(long pos, byte[] dst) {
+			int copied = 0;
+			while(copied < dst.length) {
+				final ByteBuffer chunk = chunks[(int)(pos / chunkSize)].duplicate();
+				chunk.position((int)(pos % chunkSize));
+				final int len = Math.min(dst.length - copied, chunk.remaining());
+				chunk.get(dst, copied, len);
+				copied += len;
+				pos += len;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.util.*;
+
+/**
+ * Range and descending view of a {@link TernaryTree}.  Bounds are given in
+ * ascending key order, iteration seeks to the first key in range and
+ * stops at the first key past the range.
+ *
+ * @param <V>
+ */
+final class TernaryTreeSubMap<V> extends AbstractMap<String, V> implements NavigableMap<String, V> {
+
+	private final TernaryTree<V> tree;
+
+	/*
+	 * Bounds in ascending key order, null if unbounded
+	 */
+	private final String lo;
+
+	private final boolean loInclusive;
+
+	private final String hi;
+
+	private final boolean hiInclusive;
+
+	private final boolean descending;
+
+	private Set<Map.Entry<String, V>> entrySet;
+
+	private NavigableSet<String> keySet;
+
+	TernaryTreeSubMap(TernaryTree<V> tree, String lo, boolean loInclusive, String hi, boolean hiInclusive, boolean descending) {
+		super();
+		this.tree = tree;
+		this.lo = lo;
+		this.loInclusive = loInclusive;
+		this.hi = hi;
+		this.hiInclusive = hiInclusive;
+		this.descending = descending;
+	}
+
+	private boolean tooLow(CharSequence key) {
+		if(lo == null) return false;
+		final int cmp = tree.compareKeys(key, lo);
+		return cmp < 0 || (cmp == 0 && !loInclusive);
+	}
+
+	private boolean tooHigh(CharSequence key) {
+		if(hi == null) return false;
+		final int cmp = tree.compareKeys(key, hi);
+		return cmp > 0 || (cmp == 0 && !hiInclusive);
+	}
+
+	private boolean inRange(Object key) {
+		return (key instanceof String) && !tooLow((String)key) && !tooHigh((String)key);
+	}
+
+	/*
+	 * Key is in range or, if not inclusive, equal to a bound
+	 */
+	private boolean inRange(String key, boolean inclusive) {
+		if(inclusive) return inRange(key);
+		return (lo == null || tree.compareKeys(key, lo) >= 0) && (hi == null || tree.compareKeys(key, hi) <= 0);
+	}
+
+	/*
+	 * Navigation in ascending key order
+	 */
+	private Map.Entry<String, V> checkHigh(Map.Entry<String, V> entry) {
+		return (entry == null || tooHigh(entry.getKey()) ? null : entry);
+	}
+
+	private Map.Entry<String, V> checkLow(Map.Entry<String, V> entry) {
+		return (entry == null || tooLow(entry.getKey()) ? null : entry);
+	}
+
+	private Map.Entry<String, V> absLowest() {
+		return checkHigh(lo == null ? tree.firstEntry() : (loInclusive ? tree.ceilingEntry(lo) : tree.higherEntry(lo)));
+	}
+
+	private Map.Entry<String, V> absHighest() {
+		return checkLow(hi == null ? tree.lastEntry() : (hiInclusive ? tree.floorEntry(hi) : tree.lowerEntry(hi)));
+	}
+
+	private Map.Entry<String, V> absCeiling(String key) {
+		return (tooLow(key) ? absLowest() : checkHigh(tree.ceilingEntry(key)));
+	}
+
+	private Map.Entry<String, V> absHigher(String key) {
+		return (tooLow(key) ? absLowest() : checkHigh(tree.higherEntry(key)));
+	}
+
+	private Map.Entry<String, V> absFloor(String key) {
+		return (tooHigh(key) ? absHighest() : checkLow(tree.floorEntry(key)));
+	}
+
+	private Map.Entry<String, V> absLower(String key) {
+		return (tooHigh(key) ? absHighest() : checkLow(tree.lowerEntry(key)));
+	}
+
+	private static String keyOrNull(Map.Entry<String, ?> entry) {
+		return (entry == null ? null : entry.getKey());
+	}
+
+	private static String keyOrThrow(Map.Entry<String, ?> entry) {
+		if(entry == null)
+			throw new NoSuchElementException();
+		return entry.getKey();
+	}
+
+	@Override
+	public Comparator<? super String> comparator() {
+		final Comparator<? super String> comparator = tree.comparator();
+		if(!descending) return comparator;
+		return (comparator == null ? Collections.reverseOrder() : Collections.reverseOrder(comparator));
+	}
+
+	@Override
+	public Map.Entry<String, V> lowerEntry(String key) {
+		return (descending ? absHigher(key) : absLower(key));
+	}
+
+	@Override
+	public String lowerKey(String key) {
+		return keyOrNull(lowerEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> floorEntry(String key) {
+		return (descending ? absCeiling(key) : absFloor(key));
+	}
+
+	@Override
+	public String floorKey(String key) {
+		return keyOrNull(floorEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> ceilingEntry(String key) {
+		return (descending ? absFloor(key) : absCeiling(key));
+	}
+
+	@Override
+	public String ceilingKey(String key) {
+		return keyOrNull(ceilingEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> higherEntry(String key) {
+		return (descending ? absLower(key) : absHigher(key));
+	}
+
+	@Override
+	public String higherKey(String key) {
+		return keyOrNull(higherEntry(key));
+	}
+
+	@Override
+	public Map.Entry<String, V> firstEntry() {
+		return (descending ? absHighest() : absLowest());
+	}
+
+	@Override
+	public Map.Entry<String, V> lastEntry() {
+		return (descending ? absLowest() : absHighest());
+	}
+
+	@Override
+	public String firstKey() {
+		return keyOrThrow(firstEntry());
+	}
+
+	@Override
+	public String lastKey() {
+		return keyOrThrow(lastEntry());
+	}
+
+	@Override
+	public Map.Entry<String, V> pollFirstEntry() {
+		return pollEntry(firstEntry());
+	}
+
+	@Override
+	public Map.Entry<String, V> pollLastEntry() {
+		return pollEntry(lastEntry());
+	}
+
+	private Map.Entry<String, V> pollEntry(Map.Entry<String, V> entry) {
+		if(entry != null)
+			tree.remove(entry.getKey());
+		return entry;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return inRange(key) && tree.containsKey(key);
+	}
+
+	@Override
+	public V get(Object key) {
+		return (inRange(key) ? tree.get(key) : null);
+	}
+
+	@Override
+	public V put(String key, V value) {
+		if(!inRange(key))
+			throw new IllegalArgumentException("key out of range");
+		return tree.put(key, value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return (inRange(key) ? tree.remove(key) : null);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return firstEntry() == null;
+	}
+
+	/**
+	 * Number of entries in range, requires visiting each entry
+	 */
+	@Override
+	public int size() {
+		int retVal = 0;
+		for(Iterator<TernaryTreeNode<V>> itr = nodeIterator(); itr.hasNext(); itr.next())
+			++retVal;
+		return retVal;
+	}
+
+	@Override
+	public NavigableMap<String, V> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+		if(!inRange(fromKey, fromInclusive))
+			throw new IllegalArgumentException("fromKey out of range");
+		if(!inRange(toKey, toInclusive))
+			throw new IllegalArgumentException("toKey out of range");
+		if(tree.compareKeys(fromKey, toKey) * (descending ? -1 : 1) > 0)
+			throw new IllegalArgumentException("fromKey > toKey");
+		return (descending
+				? new TernaryTreeSubMap<>(tree, toKey, toInclusive, fromKey, fromInclusive, true)
+				: new TernaryTreeSubMap<>(tree, fromKey, fromInclusive, toKey, toInclusive, false));
+	}
+
+	@Override
+	public NavigableMap<String, V> headMap(String toKey, boolean inclusive) {
+		if(!inRange(toKey, inclusive))
+			throw new IllegalArgumentException("toKey out of range");
+		return (descending
+				? new TernaryTreeSubMap<>(tree, toKey, inclusive, hi, hiInclusive, true)
+				: new TernaryTreeSubMap<>(tree, lo, loInclusive, toKey, inclusive, false));
+	}
+
+	@Override
+	public NavigableMap<String, V> tailMap(String fromKey, boolean inclusive) {
+		if(!inRange(fromKey, inclusive))
+			throw new IllegalArgumentException("fromKey out of range");
+		return (descending
+				? new TernaryTreeSubMap<>(tree, lo, loInclusive, fromKey, inclusive, true)
+				: new TernaryTreeSubMap<>(tree, fromKey, inclusive, hi, hiInclusive, false));
+	}
+
+	@Override
+	public SortedMap<String, V> subMap(String fromKey, String toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedMap<String, V> headMap(String toKey) {
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public SortedMap<String, V> tailMap(String fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	@Override
+	public NavigableMap<String, V> descendingMap() {
+		return new TernaryTreeSubMap<>(tree, lo, loInclusive, hi, hiInclusive, !descending);
+	}
+
+	@Override
+	public NavigableSet<String> navigableKeySet() {
+		NavigableSet<String> retVal = keySet;
+		if(retVal == null) {
+			retVal = new KeySet();
+			keySet = retVal;
+		}
+		return retVal;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<String> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+
+	@Override
+	public Set<Map.Entry<String, V>> entrySet() {
+		Set<Map.Entry<String, V>> retVal = entrySet;
+		if(retVal == null) {
+			retVal = new EntrySet();
+			entrySet = retVal;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Iterator over terminated nodes in range, in the order of this map
+	 */
+	private TerminatedNodeIterator<V> nodeIterator() {
+		final TerminatedNodeIterator<V> retVal = new TerminatedNodeIterator<>(tree, descending);
+		final String start = (descending ? hi : lo);
+		if(start != null)
+			retVal.seek(start, (descending ? hiInclusive : loInclusive));
+		if(descending ? lo != null : hi != null)
+			retVal.setLimit( (key) -> descending ? !tooLow(key) : !tooHigh(key) );
+		return retVal;
+	}
+
+	private abstract class RangeIterator<T> implements Iterator<T> {
+
+		protected final TerminatedNodeIterator<V> itr = nodeIterator();
+
+		@Override
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+
+		@Override
+		public void remove() {
+			itr.remove();
+		}
+
+	}
+
+	private final class EntryIterator extends RangeIterator<Map.Entry<String, V>> {
+
+		@Override
+		public Map.Entry<String, V> next() {
+			final TernaryTreeNode<V> node = itr.next();
+			return new WriteThroughEntry(itr.getCurrentKey().toString(), node.getValue());
+		}
+
+	}
+
+	private final class KeyIterator extends RangeIterator<String> {
+
+		@Override
+		public String next() {
+			itr.next();
+			return itr.getCurrentKey().toString();
+		}
+
+	}
+
+	/**
+	 * Entry which updates the tree when its value is set
+	 */
+	private final class WriteThroughEntry extends AbstractMap.SimpleEntry<String, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		WriteThroughEntry(String key, V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(V value) {
+			super.setValue(value);
+			return tree.put(getKey(), value);
+		}
+
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<String, V>> {
+
+		@Override
+		public Iterator<Map.Entry<String, V>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return TernaryTreeSubMap.this.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return TernaryTreeSubMap.this.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return (o instanceof Map.Entry) && inRange(((Map.Entry<?, ?>)o).getKey())
+					&& tree.entrySet().contains(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return (o instanceof Map.Entry) && inRange(((Map.Entry<?, ?>)o).getKey())
+					&& tree.entrySet().remove(o);
+		}
+
+	}
+
+	private final class KeySet extends AbstractSet<String> implements NavigableSet<String> {
+
+		@Override
+		public Iterator<String> iterator() {
+			return new KeyIterator();
+		}
+
+		@Override
+		public Iterator<String> descendingIterator() {
+			return descendingSet().iterator();
+		}
+
+		@Override
+		public int size() {
+			return TernaryTreeSubMap.this.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return TernaryTreeSubMap.this.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return TernaryTreeSubMap.this.remove(o) != null;
+		}
+
+		@Override
+		public Comparator<? super String> comparator() {
+			return TernaryTreeSubMap.this.comparator();
+		}
+
+		@Override
+		public String lower(String e) {
+			return lowerKey(e);
+		}
+
+		@Override
+		public String floor(String e) {
+			return floorKey(e);
+		}
+
+		@Override
+		public String ceiling(String e) {
+			return ceilingKey(e);
+		}
+
+		@Override
+		public String higher(String e) {
+			return higherKey(e);
+		}
+
+		@Override
+		public String first() {
+			return firstKey();
+		}
+
+		@Override
+		public String last() {
+			return lastKey();
+		}
+
+		@Override
+		public String pollFirst() {
+			return keyOrNull(pollFirstEntry());
+		}
+
+		@Override
+		public String pollLast() {
+			return keyOrNull(pollLastEntry());
+		}
+
+		@Override
+		public NavigableSet<String> descendingSet() {
+			return descendingMap().navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<String> subSet(String fromElement, boolean fromInclusive, String toElement, boolean toInclusive) {
+			return subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+			return headMap(toElement, inclusive).navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+			return tailMap(fromElement, inclusive).navigableKeySet();
+		}
+
+		@Override
+		public SortedSet<String> subSet(String fromElement, String toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		@Override
+		public SortedSet<String> headSet(String toElement) {
+			return headSet(toElement, false);
+		}
+
+		@Override
+		public SortedSet<String> tailSet(String fromElement) {
+			return tailSet(fromElement, true);
+		}
+
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializer for tree values used by binary tree formats.
+ *
+ * @param <V>
+ */
+public interface TernaryTreeValueSerializer<V> {
+
+	/**
+	 * Write value to output
+	 *
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public void write(DataOutput out, V value) throws IOException;
+
+	/**
+	 * Read value from input
+	 *
+	 * @param in
+	 * @return value
+	 * @throws IOException
+	 */
+	public V read(DataInput in) throws IOException;
+
+	/**
+	 * Serializer for string values, strings are written as a length
+	 * followed by UTF-8 bytes.
+	 */
+	public static TernaryTreeValueSerializer<String> forStrings() {
+		return new TernaryTreeValueSerializer<String>() {
+
+			@Override
+			public void write(DataOutput out, String value) throws IOException {
+				final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			@Override
+			public String read(DataInput in) throws IOException {
+				final byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+
+		};
+	}
+
+	/**
+	 * Serializer for integer values
+	 */
+	public static TernaryTreeValueSerializer<Integer> forIntegers() {
+		return new TernaryTreeValueSerializer<Integer>() {
+
+			@Override
+			public void write(DataOutput out, Integer value) throws IOException {
+				out.writeInt(value);
+			}
+
+			@Override
+			public Integer read(DataInput in) throws IOException {
+				return in.readInt();
+			}
+
+		};
+	}
+
+	/**
+	 * Serializer for values using java serialization.
+	 */
+	public static <T extends Serializable> TernaryTreeValueSerializer<T> forSerializable() {
+		return new TernaryTreeValueSerializer<T>() {
+
+			@Override
+			public void write(DataOutput out, T value) throws IOException {
+				final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+				try(ObjectOutputStream oout = new ObjectOutputStream(bout)) {
+					oout.writeObject(value);
+				}
+				out.writeInt(bout.size());
+				out.write(bout.toByteArray());
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public T read(DataInput in) throws IOException {
+				final byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				try(ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+					return (T)oin.readObject();
+				} catch (ClassNotFoundException e) {
+					throw new IOException(e);
+				}
+			}
+
+		};
+	}
+
+}
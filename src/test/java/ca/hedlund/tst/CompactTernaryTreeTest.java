@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.util.*;
+import java.util.Map.Entry;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CompactTernaryTreeTest {
+
+	private final TSTTest tstTest = new TSTTest();
+
+	@Test
+	public void testMapOperations() {
+		final TernaryTree<String> tree = tstTest.createTestTree();
+		final CompactTernaryTree<String> compactTree = new CompactTernaryTree<>();
+		for(Entry<String, String> entry:tree.entrySet()) {
+			compactTree.put(entry.getKey(), entry.getValue());
+		}
+
+		Assert.assertEquals(tree.size(), compactTree.size());
+		Assert.assertEquals(new ArrayList<>(tree.keySet()), new ArrayList<>(compactTree.keySet()));
+		Assert.assertEquals("world", compactTree.get("stick"));
+		Assert.assertEquals("empty", compactTree.get(""));
+		Assert.assertNull(compactTree.get("stic"));
+		Assert.assertEquals(tree.keysWithPrefix("art"), compactTree.keysWithPrefix("art"));
+		Assert.assertEquals(tree.keysWithPrefix(""), compactTree.keysWithPrefix(""));
+		Assert.assertEquals(new ArrayList<>(tree.valuesWithPrefix("be")), new ArrayList<>(compactTree.valuesWithPrefix("be")));
+
+		Assert.assertEquals("1", compactTree.remove("bet"));
+		Assert.assertNull(compactTree.remove("bet"));
+		Assert.assertEquals(tree.size() - 1, compactTree.size());
+		Assert.assertFalse(compactTree.containsKey("bet"));
+		Assert.assertTrue(compactTree.containsKey("better"));
+
+		compactTree.clear();
+		Assert.assertTrue(compactTree.isEmpty());
+		Assert.assertEquals(1, compactTree.nodeCount());
+	}
+
+	@Test
+	public void testCopyPreservesPaths() {
+		final TernaryTree<String> tree = tstTest.createTestTree();
+		tree.put("a much longer key to exercise deeper node paths", "long");
+		final CompactTernaryTree<String> compactTree = new CompactTernaryTree<>(tree);
+
+		Assert.assertEquals(tree.size(), compactTree.size());
+		for(Entry<String, String> entry:tree.entrySet()) {
+			final TernaryTreeNodePath path = tree.findNode(entry.getKey()).get().getPath();
+			Assert.assertArrayEquals(path.toByteArray(), compactTree.getPath(entry.getKey()).get().toByteArray());
+			Assert.assertEquals(entry.getValue(), compactTree.get(path));
+			Assert.assertEquals(entry.getKey(), compactTree.getKey(path).get());
+		}
+	}
+
+}
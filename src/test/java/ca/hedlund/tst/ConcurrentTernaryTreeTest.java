@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ConcurrentTernaryTreeTest {
+
+	private void runThreads(int numThreads, Runnable runnable) throws InterruptedException {
+		final List<Thread> threads = new ArrayList<>();
+		for(int i = 0; i < numThreads; i++) {
+			threads.add(new Thread(runnable));
+		}
+		threads.forEach(Thread::start);
+		for(Thread thread:threads) thread.join();
+	}
+
+	@Test
+	public void testMapOperations() {
+		final ConcurrentTernaryTree<String> tree = new ConcurrentTernaryTree<>();
+		Assert.assertTrue(tree.isEmpty());
+		Assert.assertNull(tree.put("bet", "1"));
+		Assert.assertNull(tree.put("better", "2"));
+		Assert.assertNull(tree.put("", "empty"));
+		Assert.assertEquals("1", tree.put("bet", "3"));
+		Assert.assertEquals(3, tree.size());
+		Assert.assertEquals("3", tree.putIfAbsent("bet", "4"));
+		Assert.assertNull(tree.putIfAbsent("art", "5"));
+		Assert.assertFalse(tree.replace("art", "4", "6"));
+		Assert.assertTrue(tree.replace("art", "5", "6"));
+		Assert.assertFalse(tree.remove("art", "5"));
+		Assert.assertTrue(tree.remove("art", "6"));
+		Assert.assertNull(tree.get("art"));
+		Assert.assertNull(tree.get("be"));
+		Assert.assertEquals("empty", tree.get(""));
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("bet", "better")), tree.keysWithPrefix("be"));
+		Assert.assertEquals(Arrays.asList("", "bet", "better"), new ArrayList<>(tree.keySet()));
+		Assert.assertEquals("32", tree.merge("bet", "2", String::concat));
+		Assert.assertNull(tree.computeIfPresent("better", (k, v) -> null));
+		Assert.assertEquals(2, tree.size());
+		tree.clear();
+		Assert.assertTrue(tree.isEmpty());
+		Assert.assertTrue(tree.entrySet().isEmpty());
+	}
+
+	@Test
+	public void testConcurrentMerge() throws InterruptedException {
+		final ConcurrentTernaryTree<Integer> tree = new ConcurrentTernaryTree<>();
+		final int numKeys = 500;
+		final int numThreads = 8;
+		runThreads(numThreads, () -> {
+			for(int i = 0; i < numKeys; i++) {
+				tree.merge("key" + i, 1, Integer::sum);
+			}
+		});
+		Assert.assertEquals(numKeys, tree.size());
+		for(int i = 0; i < numKeys; i++) {
+			Assert.assertEquals(Integer.valueOf(numThreads), tree.get("key" + i));
+		}
+	}
+
+	@Test
+	public void testConcurrentPutIfAbsent() throws InterruptedException {
+		final ConcurrentTernaryTree<Integer> tree = new ConcurrentTernaryTree<>();
+		final AtomicInteger winners = new AtomicInteger();
+		final AtomicInteger threadId = new AtomicInteger();
+		runThreads(8, () -> {
+			final int id = threadId.incrementAndGet();
+			for(int i = 0; i < 500; i++) {
+				if(tree.putIfAbsent(Integer.toString(i), id) == null)
+					winners.incrementAndGet();
+			}
+		});
+		Assert.assertEquals(500, winners.get());
+		Assert.assertEquals(500, tree.size());
+	}
+
+	@Test
+	public void testSerialization() throws IOException, ClassNotFoundException {
+		final ConcurrentTernaryTree<String> tree = new ConcurrentTernaryTree<>(CharComparator.reverseOrder());
+		tree.put("", "empty");
+		tree.put("abc", "1");
+		tree.put("abd", "2");
+		tree.put("removed", "3");
+		tree.remove("removed");
+		// long chains which would overflow default serialization
+		final StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 50000; i++) sb.append((char)('a' + (i % 26)));
+		tree.put(sb.toString(), "deep");
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bout)) {
+			out.writeObject(tree);
+		}
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+			@SuppressWarnings("unchecked")
+			final ConcurrentTernaryTree<String> tree2 = (ConcurrentTernaryTree<String>)in.readObject();
+			Assert.assertEquals(tree.size(), tree2.size());
+			Assert.assertEquals(new ArrayList<>(tree.entrySet()), new ArrayList<>(tree2.entrySet()));
+			Assert.assertEquals("deep", tree2.get(sb.toString()));
+			Assert.assertNull(tree2.get("removed"));
+			tree2.put("abe", "4");
+			Assert.assertEquals(tree.size() + 1, tree2.size());
+		}
+	}
+
+}
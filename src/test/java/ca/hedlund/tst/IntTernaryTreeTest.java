@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class IntTernaryTreeTest {
+
+	private static final String[] WORDS = { "the", "cat", "sat", "on", "the", "mat", "then", "the", "cat", "ate", "" };
+
+	@Test
+	public void testCounts() {
+		final IntTernaryTree tree = new IntTernaryTree();
+		final TernaryTree<Integer> expected = new TernaryTree<>();
+		for(String word:WORDS) {
+			tree.addTo(word, 1);
+			expected.merge(word, 1, Integer::sum);
+		}
+
+		Assert.assertEquals(expected.size(), tree.size());
+		Assert.assertEquals(3, tree.getInt("the"));
+		Assert.assertEquals(1, tree.getInt(""));
+		Assert.assertEquals(0, tree.getInt("th"));
+		Assert.assertEquals(-1, tree.getOrDefault("th", -1));
+		Assert.assertFalse(tree.containsKey("th"));
+		Assert.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(tree.keysWithPrefix("")));
+		Assert.assertEquals(expected.keysWithPrefix("th"), tree.keysWithPrefix("th"));
+		Assert.assertEquals(4L, tree.sumWithPrefix("th"));
+		Assert.assertEquals(2, tree.countWithPrefix("th"));
+		Assert.assertEquals(WORDS.length, tree.sumWithPrefix(""));
+		Assert.assertEquals(0L, tree.sumWithPrefix("x"));
+
+		final StringBuilder builder = new StringBuilder();
+		tree.forEachWithPrefix("t", (key, value) -> builder.append(key).append(value));
+		Assert.assertEquals("the3then1", builder.toString());
+
+		// keys mapped to zero are still terminated
+		Assert.assertEquals(0, tree.addTo("the", -3));
+		Assert.assertTrue(tree.containsKey("the"));
+		Assert.assertEquals(1, tree.putInt("on", 5));
+		Assert.assertEquals(5, tree.removeInt("on"));
+		Assert.assertFalse(tree.containsKey("on"));
+		Assert.assertEquals(0, tree.removeInt("on"));
+		Assert.assertEquals(expected.size() - 1, tree.size());
+		Assert.assertEquals(0, tree.putInt("dog", 7));
+		Assert.assertEquals(7, tree.getInt("dog"));
+
+		tree.clear();
+		Assert.assertTrue(tree.isEmpty());
+		Assert.assertEquals(1, tree.nodeCount());
+		Assert.assertEquals(0L, tree.sumWithPrefix(""));
+	}
+
+	@Test
+	public void testLongValues() throws IOException, ClassNotFoundException {
+		final LongTernaryTree tree = new LongTernaryTree();
+		for(String word:WORDS)
+			tree.addTo(word, Integer.MAX_VALUE);
+		Assert.assertEquals(3L * Integer.MAX_VALUE, tree.getLong("the"));
+		Assert.assertEquals(WORDS.length * (long)Integer.MAX_VALUE, tree.sumWithPrefix(""));
+		Assert.assertEquals(2L * Integer.MAX_VALUE, tree.removeLong("cat"));
+		Assert.assertFalse(tree.containsKey("cat"));
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bout)) {
+			out.writeObject(tree);
+		}
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+			final LongTernaryTree tree2 = (LongTernaryTree)in.readObject();
+			Assert.assertEquals(tree.toString(), tree2.toString());
+			Assert.assertEquals(tree.size(), tree2.size());
+			tree2.addTo("cat", 1L);
+			Assert.assertEquals(1L, tree2.getLong("cat"));
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.util.*;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NavigableTernaryTreeTest {
+
+	private static final String[] PROBES = { "", "a", "ab", "abc", "b", "ba", "bca", "c", "cc", "d", "dddd", "z" };
+
+	private TernaryTree<Integer> createTree(Random random, Comparator<Character> comparator) {
+		final TernaryTree<Integer> tree = new TernaryTree<>(comparator);
+		tree.put("", 0);
+		for(int i = 0; i < 300; i++) {
+			final StringBuilder builder = new StringBuilder();
+			final int len = 1 + random.nextInt(4);
+			for(int j = 0; j < len; j++) builder.append((char)('a' + random.nextInt(4)));
+			tree.put(builder.toString(), i);
+		}
+		return tree;
+	}
+
+	private void assertNavigation(NavigableMap<String, Integer> expected, NavigableMap<String, Integer> actual) {
+		Assert.assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+		Assert.assertEquals(new ArrayList<>(expected.descendingKeySet()), new ArrayList<>(actual.descendingKeySet()));
+		Assert.assertEquals(expected.size(), actual.size());
+		Assert.assertEquals(expected.firstEntry(), actual.firstEntry());
+		Assert.assertEquals(expected.lastEntry(), actual.lastEntry());
+		for(String probe:PROBES) {
+			Assert.assertEquals(probe, expected.lowerEntry(probe), actual.lowerEntry(probe));
+			Assert.assertEquals(probe, expected.floorEntry(probe), actual.floorEntry(probe));
+			Assert.assertEquals(probe, expected.ceilingEntry(probe), actual.ceilingEntry(probe));
+			Assert.assertEquals(probe, expected.higherEntry(probe), actual.higherEntry(probe));
+			Assert.assertEquals(probe, expected.containsKey(probe), actual.containsKey(probe));
+		}
+	}
+
+	private void testNavigation(Comparator<Character> comparator) {
+		final TernaryTree<Integer> tree = createTree(new Random(3), comparator);
+		final TreeMap<String, Integer> expected = new TreeMap<>(tree.comparator());
+		expected.putAll(tree);
+
+		assertNavigation(expected, tree);
+		assertNavigation(expected.descendingMap(), tree.descendingMap());
+		for(String from:PROBES) {
+			for(String to:PROBES) {
+				if(expected.comparator() != null ? expected.comparator().compare(from, to) > 0 : from.compareTo(to) > 0) continue;
+				assertNavigation(expected.subMap(from, true, to, false), tree.subMap(from, true, to, false));
+				assertNavigation(expected.subMap(from, false, to, true).descendingMap(), tree.subMap(from, false, to, true).descendingMap());
+			}
+			assertNavigation(expected.headMap(from, true), tree.headMap(from, true));
+			assertNavigation(expected.tailMap(from, false), tree.tailMap(from, false));
+			assertNavigation(expected.descendingMap().headMap(from, false), tree.descendingMap().headMap(from, false));
+		}
+	}
+
+	@Test
+	public void testNavigation() {
+		testNavigation(null);
+	}
+
+	@Test
+	public void testNavigationWithComparator() {
+		testNavigation(Comparator.reverseOrder());
+	}
+
+	@Test
+	public void testRangeViews() {
+		final TernaryTree<String> tree = new TSTTest().createTestTree();
+		Assert.assertEquals("", tree.firstKey());
+		Assert.assertEquals("strap", tree.lastKey());
+		Assert.assertNull(tree.comparator());
+
+		final NavigableMap<String, String> range = tree.subMap("b", true, "bz", false);
+		Assert.assertEquals(Arrays.asList("bazar", "be", "bet", "better", "butter"), new ArrayList<>(range.keySet()));
+		Assert.assertEquals("bet", range.navigableKeySet().higher("be"));
+		Assert.assertEquals(Arrays.asList("bet", "better"), new ArrayList<>(range.navigableKeySet().subSet("bet", true, "bf", false)));
+		try {
+			range.put("art", "x");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {}
+
+		range.put("bo", "new");
+		Assert.assertEquals("new", tree.get("bo"));
+		range.entrySet().iterator().next().setValue("market");
+		Assert.assertEquals("market", tree.get("bazar"));
+
+		final Iterator<String> itr = range.keySet().iterator();
+		while(itr.hasNext()) {
+			if(itr.next().startsWith("be"))
+				itr.remove();
+		}
+		Assert.assertEquals(Arrays.asList("bazar", "bo", "butter"), new ArrayList<>(range.keySet()));
+		Assert.assertEquals("artup", tree.lowerKey("bazar"));
+
+		Assert.assertEquals("", tree.pollFirstEntry().getKey());
+		Assert.assertEquals("strap", tree.pollLastEntry().getKey());
+		Assert.assertEquals("stick", tree.lastKey());
+		tree.headMap("b").clear();
+		Assert.assertEquals("bazar", tree.firstKey());
+
+		tree.clear();
+		Assert.assertNull(tree.firstEntry());
+		try {
+			tree.firstKey();
+			Assert.fail();
+		} catch (NoSuchElementException e) {}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ScoredTernaryTreeTest {
+
+	private static final ToDoubleFunction<Integer> SCORE = (ToDoubleFunction<Integer> & Serializable)Integer::doubleValue;
+
+	private ScoredTernaryTree<Integer> createScoredTree(Random random, int size) {
+		final ScoredTernaryTree<Integer> tree = new ScoredTernaryTree<>(SCORE);
+		tree.put("", 5);
+		for(int i = 0; i < size; i++) {
+			final StringBuilder builder = new StringBuilder();
+			final int len = 1 + random.nextInt(6);
+			for(int j = 0; j < len; j++) builder.append((char)('a' + random.nextInt(4)));
+			tree.put(builder.toString(), random.nextInt(50));
+		}
+		return tree;
+	}
+
+	private void assertTopK(ScoredTernaryTree<Integer> tree) {
+		for(String prefix:new String[] { "", "a", "ab", "bca", "dddd", "x" }) {
+			for(int k:new int[] { 0, 1, 5, 20, tree.size() + 1 }) {
+				Assert.assertEquals(tree.topKWithPrefix(prefix, k, Integer::doubleValue), tree.topKWithPrefix(prefix, k));
+			}
+		}
+	}
+
+	@Test
+	public void testTopKWithPrefix() {
+		final ScoredTernaryTree<Integer> tree = createScoredTree(new Random(7), 500);
+		assertTopK(tree);
+
+		final List<Map.Entry<String, Integer>> top = tree.topKWithPrefix("", 3);
+		Assert.assertEquals(3, top.size());
+		Assert.assertTrue(top.get(0).getValue() >= top.get(1).getValue());
+		Assert.assertTrue(top.get(1).getValue() >= top.get(2).getValue());
+	}
+
+	@Test
+	public void testScoresUpdated() throws Exception {
+		final Random random = new Random(11);
+		final ScoredTernaryTree<Integer> tree = createScoredTree(random, 300);
+
+		tree.put("abc", 1000);
+		Assert.assertEquals("abc", tree.topKWithPrefix("", 1).get(0).getKey());
+		tree.put("abc", -1);
+		Assert.assertFalse("abc".equals(tree.topKWithPrefix("a", 1).get(0).getKey()));
+		assertTopK(tree);
+
+		final List<String> keys = new ArrayList<>(tree.keySet());
+		Collections.shuffle(keys, random);
+		for(String key:keys.subList(0, keys.size() / 2)) tree.remove(key);
+		assertTopK(tree);
+
+		// dead chains below new first chars are removed by the final pass
+		for(String key:new String[] { "e", "fgh", "zz", "\u0000x" })
+			tree.findNode(key, true, true);
+		tree.compact();
+		assertTopK(tree);
+		Assert.assertEquals(Collections.max(tree.values()).doubleValue(), tree.getMaxScore(tree.getRoot()), 0.0);
+		Assert.assertFalse(tree.findNode("e").isPresent());
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bout)) {
+			out.writeObject(tree);
+		}
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+			@SuppressWarnings("unchecked")
+			final ScoredTernaryTree<Integer> copy = (ScoredTernaryTree<Integer>)in.readObject();
+			Assert.assertEquals(tree.topKWithPrefix("", 10), copy.topKWithPrefix("", 10));
+		}
+
+		tree.clear();
+		Assert.assertTrue(tree.topKWithPrefix("", 5).isEmpty());
+	}
+
+}
@@ -18,8 +18,11 @@ package ca.hedlund.tst;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.*;
 import java.util.Map.Entry;
-import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
 
 import org.junit.*;
 import org.junit.runner.RunWith;
@@ -171,4 +174,711 @@ public class TSTTest {
 		}
 	}
 
+	@Test
+	public void testCodec() throws IOException, ClassNotFoundException {
+		final TernaryTree<String> tree = createTestTree();
+		// degenerate chains which would overflow a recursive codec
+		final StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 100000; i++) sb.append((char)('a' + (i % 26)));
+		tree.put(sb.toString(), "deep");
+		for(char c = 'A'; c <= 'Z'; c++) tree.put(String.valueOf(c), "upper");
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		tree.writeTo(bout, TernaryTreeValueSerializer.forStrings());
+		final TernaryTree<String> tree2 = TernaryTree.readFrom(new ByteArrayInputStream(bout.toByteArray()),
+				TernaryTreeValueSerializer.forStrings());
+		Assert.assertEquals(tree.size(), tree2.size());
+		Assert.assertEquals(new ArrayList<>(tree.entrySet()), new ArrayList<>(tree2.entrySet()));
+		Assert.assertEquals("deep", tree2.get(sb.toString()));
+
+		final ByteArrayOutputStream oout = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(oout)) {
+			out.writeObject(tree);
+		}
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(oout.toByteArray()))) {
+			@SuppressWarnings("unchecked")
+			final TernaryTree<String> tree3 = (TernaryTree<String>)in.readObject();
+			Assert.assertEquals(tree.size(), tree3.size());
+			Assert.assertEquals(new ArrayList<>(tree.entrySet()), new ArrayList<>(tree3.entrySet()));
+			tree3.put("new", "value");
+			Assert.assertEquals(tree.size() + 1, tree3.size());
+		}
+	}
+
+	private int maxDepth(TernaryTree<?> tree) {
+		int retVal = 0;
+		final Deque<TernaryTreeNode<?>> stack = new ArrayDeque<>();
+		stack.push(tree.getRoot());
+		while(!stack.isEmpty()) {
+			final TernaryTreeNode<?> node = stack.pop();
+			int depth = 0;
+			for(TernaryTreeNode<?> n = node; !n.isRoot(); n = n.getParent()) ++depth;
+			retVal = Math.max(retVal, depth);
+			if(node.getLeft() != null) stack.push(node.getLeft());
+			if(node.getCenter() != null) stack.push(node.getCenter());
+			if(node.getRight() != null) stack.push(node.getRight());
+		}
+		return retVal;
+	}
+
+	@Test
+	public void testBulkLoad() {
+		final TreeMap<String, String> sortedMap = new TreeMap<>();
+		for(char c1 = 'a'; c1 <= 'z'; c1++) {
+			for(char c2 = 'a'; c2 <= 'z'; c2++) {
+				sortedMap.put("" + c1 + c2, "" + c2 + c1);
+			}
+			sortedMap.put("" + c1, "" + c1);
+		}
+		sortedMap.put("", "empty");
+
+		final TernaryTree<String> putTree = new TernaryTree<>();
+		for(Entry<String, String> entry:sortedMap.entrySet())
+			putTree.put(entry.getKey(), entry.getValue());
+
+		final TernaryTree<String> bulkTree = new TernaryTree<>();
+		bulkTree.bulkLoad(sortedMap.entrySet().iterator());
+		Assert.assertEquals(sortedMap.size(), bulkTree.size());
+		Assert.assertEquals(new ArrayList<>(sortedMap.entrySet()), new ArrayList<>(bulkTree.entrySet()));
+		Assert.assertTrue(maxDepth(bulkTree) <= 12);
+		Assert.assertTrue(maxDepth(bulkTree) < maxDepth(putTree));
+
+		// unsorted input with duplicates into a non-empty tree
+		final List<Entry<String, String>> shuffled = new ArrayList<>(createTestTree().entrySet());
+		Collections.shuffle(shuffled, new Random(1));
+		shuffled.add(new AbstractMap.SimpleEntry<>("stick", "replaced"));
+		shuffled.add(new AbstractMap.SimpleEntry<>("aa", null));
+		bulkTree.bulkLoad(shuffled.iterator());
+		Assert.assertEquals("replaced", bulkTree.get("stick"));
+		Assert.assertEquals("empty", bulkTree.get(""));
+		Assert.assertFalse(bulkTree.containsKey("aa"));
+		Assert.assertEquals("1", bulkTree.get("arbitrary"));
+
+		final TernaryTree<String> built = new TernaryTree.Builder<String>()
+				.putAll(createTestTree())
+				.put("zebra", "stripes")
+				.build();
+		Assert.assertEquals(createTestTree().size() + 1, built.size());
+		Assert.assertEquals(createTestTree().keysWithPrefix("art"), built.keysWithPrefix("art"));
+		Assert.assertEquals("stripes", built.get("zebra"));
+	}
+
+	@Test
+	public void testCompact() {
+		final TernaryTree<String> tree = new TernaryTree<>();
+		final TreeMap<String, String> expected = new TreeMap<>();
+		for(char c1 = 'a'; c1 <= 'z'; c1++) {
+			for(char c2 = 'a'; c2 <= 'z'; c2++) {
+				final String key = "" + c1 + c2 + "suffix";
+				if(c2 % 2 == 0 && c1 != 'q') {
+					tree.put(key, key);
+					expected.put(key, key);
+				} else {
+					// dead chain
+					tree.findNode(key, true, true);
+				}
+			}
+		}
+		final int depthBefore = maxDepth(tree);
+		final int nodesBefore = tree.nodeCount();
+
+		final TernaryTree.CompactionResult result = tree.compact();
+		Assert.assertEquals(nodesBefore, result.getNodeCountBefore());
+		Assert.assertEquals(tree.nodeCount(), result.getNodeCountAfter());
+		Assert.assertTrue(result.getNodeCountAfter() < result.getNodeCountBefore());
+		Assert.assertTrue(maxDepth(tree) < depthBefore);
+		Assert.assertEquals(expected.size(), tree.size());
+		Assert.assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(tree.entrySet()));
+		Assert.assertFalse(tree.findNode("q").isPresent());
+
+		tree.findNode("bbxyz", true, true);
+		final TernaryTree.CompactionResult prefixResult = tree.compact("bb");
+		Assert.assertEquals(3, prefixResult.getNodeCountBefore() - prefixResult.getNodeCountAfter());
+		Assert.assertFalse(tree.findNode("bbx").isPresent());
+		Assert.assertEquals("bbsuffix", tree.get("bbsuffix"));
+	}
+
+	@Test
+	public void testRemovePrunesNodes() {
+		final TernaryTree<String> tree = createTestTree();
+		final int nodeCount = tree.nodeCount();
+		tree.put("bazaar", "market");
+		tree.put("arm", "leg");
+		tree.put("artistry", "craft");
+		tree.put("zebra", "stripes");
+		Assert.assertEquals("market", tree.remove("bazaar"));
+		Assert.assertEquals("leg", tree.remove("arm"));
+		Assert.assertEquals("craft", tree.remove("artistry"));
+		Assert.assertEquals("stripes", tree.put("zebra", null));
+		Assert.assertEquals(nodeCount, tree.nodeCount());
+		Assert.assertEquals(new ArrayList<>(createTestTree().entrySet()), new ArrayList<>(tree.entrySet()));
+
+		// nodes with both left and right siblings
+		final TernaryTree<String> siblings = new TernaryTree<>();
+		for(String key:new String[] { "m", "f", "t", "c", "h", "p", "w", "g", "j" })
+			siblings.put(key, key);
+		siblings.remove("f");
+		siblings.remove("m");
+		Assert.assertEquals(Arrays.asList("c", "g", "h", "j", "p", "t", "w"), new ArrayList<>(siblings.keySet()));
+		Assert.assertEquals(8, siblings.nodeCount());
+
+		// removal using iterator
+		final Iterator<String> itr = tree.keySet().iterator();
+		while(itr.hasNext()) {
+			if(itr.next().startsWith("art")) itr.remove();
+		}
+		Assert.assertFalse(tree.findNode("art").isPresent());
+		Assert.assertEquals("1", tree.get("arbitrary"));
+		Assert.assertTrue(tree.nodeCount() < nodeCount);
+	}
+
+	@Test
+	public void testSuffixIndex() throws IOException, ClassNotFoundException {
+		final TernaryTree<String> tree = createTestTree();
+		final TernaryTree<String> indexedTree = createTestTree();
+		indexedTree.setSuffixIndexEnabled(true);
+		Assert.assertTrue(indexedTree.isSuffixIndexEnabled());
+
+		final String[] suffixes = { "r", "ar", "er", "t", "tter", "stick", "x", "" };
+		for(String suffix:suffixes) {
+			Assert.assertEquals(new ArrayList<>(tree.keysEndingWith(suffix)), new ArrayList<>(indexedTree.keysEndingWith(suffix)));
+			Assert.assertEquals(new ArrayList<>(tree.valuesForKeysEndingWith(suffix)), new ArrayList<>(indexedTree.valuesForKeysEndingWith(suffix)));
+			Assert.assertEquals(new ArrayList<>(tree.entriesForKeysEndingWith(suffix)), new ArrayList<>(indexedTree.entriesForKeysEndingWith(suffix)));
+		}
+
+		indexedTree.put("altar", "table");
+		indexedTree.remove("bazar");
+		indexedTree.put("better", "2");
+		indexedTree.put("sonar", "ping");
+		Assert.assertEquals(Arrays.asList("altar", "sonar"), new ArrayList<>(indexedTree.keysEndingWith("ar")));
+		Assert.assertEquals(Arrays.asList("2", "bread"), new ArrayList<>(indexedTree.valuesForKeysEndingWith("tter")));
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bout)) {
+			out.writeObject(indexedTree);
+		}
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+			@SuppressWarnings("unchecked")
+			final TernaryTree<String> tree2 = (TernaryTree<String>)in.readObject();
+			Assert.assertTrue(tree2.isSuffixIndexEnabled());
+			Assert.assertEquals(indexedTree.keysEndingWith("ar"), tree2.keysEndingWith("ar"));
+		}
+
+		indexedTree.clear();
+		Assert.assertTrue(indexedTree.keysEndingWith("ar").isEmpty());
+		indexedTree.setSuffixIndexEnabled(false);
+		indexedTree.put("car", "wheels");
+		Assert.assertEquals(Collections.singleton("car"), indexedTree.keysEndingWith("ar"));
+	}
+
+	@Test
+	public void testInfixIndex() {
+		final TernaryTree<String> tree = createTestTree();
+		tree.put("ArtFul", "caps");
+		final TernaryTree<String> indexedTree = createTestTree();
+		indexedTree.put("ArtFul", "caps");
+		indexedTree.setInfixIndexEnabled(true);
+		Assert.assertTrue(indexedTree.isInfixIndexEnabled());
+
+		final String[] infixes = { "t", "tt", "tte", "rt", "art", "ART", "artis", "bitrary", "x", "" };
+		for(String infix:infixes) {
+			for(boolean caseSensitive:new boolean[] { true, false }) {
+				Assert.assertEquals(new ArrayList<>(tree.keysContaining(infix, caseSensitive)),
+						new ArrayList<>(indexedTree.keysContaining(infix, caseSensitive)));
+				Assert.assertEquals(new ArrayList<>(tree.valuesForKeysContaining(infix, caseSensitive)),
+						new ArrayList<>(indexedTree.valuesForKeysContaining(infix, caseSensitive)));
+				Assert.assertEquals(new ArrayList<>(tree.entriesForKeysContaining(infix, caseSensitive)),
+						new ArrayList<>(indexedTree.entriesForKeysContaining(infix, caseSensitive)));
+			}
+		}
+
+		indexedTree.put("cartoon", "film");
+		indexedTree.remove("artup");
+		Assert.assertEquals(Arrays.asList("ArtFul", "art", "artist", "cartoon"), new ArrayList<>(indexedTree.keysContaining("art", false)));
+		indexedTree.remove("cartoon");
+		Assert.assertEquals(Arrays.asList("art", "artist"), new ArrayList<>(indexedTree.keysContaining("art")));
+
+		indexedTree.clear();
+		Assert.assertTrue(indexedTree.keysContaining("art").isEmpty());
+	}
+
+	@Test
+	public void testAtomicUpdates() throws InterruptedException {
+		final TernaryTree<String> tree = createTestTree();
+		final int nodeCount = tree.nodeCount();
+
+		Assert.assertEquals("1", tree.putIfAbsent("bet", "2"));
+		Assert.assertNull(tree.putIfAbsent("bets", "2"));
+		Assert.assertEquals("2", tree.get("bets"));
+		Assert.assertEquals("world", tree.computeIfAbsent("stick", (k) -> "x"));
+		Assert.assertEquals("data!", tree.computeIfPresent("strap", (k, v) -> v + "!"));
+		Assert.assertNull(tree.computeIfPresent("stra", (k, v) -> v + "!"));
+		Assert.assertNull(tree.computeIfPresent("bets", (k, v) -> null));
+		Assert.assertFalse(tree.containsKey("bets"));
+		Assert.assertEquals("art=1", tree.compute("art", (k, v) -> k + "=" + v));
+		Assert.assertEquals("2", tree.merge("orb", "1", (v1, v2) -> Integer.toString(Integer.parseInt(v1) + Integer.parseInt(v2))));
+		Assert.assertNull(tree.merge("orb", "1", (v1, v2) -> null));
+		Assert.assertFalse(tree.containsKey("orb"));
+		Assert.assertEquals("1", tree.merge("orb", "1", (v1, v2) -> null));
+		Assert.assertEquals(createTestTree().size(), tree.size());
+
+		// nodes created for keys which end up absent are unlinked
+		Assert.assertNull(tree.computeIfAbsent("zebra", (k) -> null));
+		Assert.assertNull(tree.compute("zebu", (k, v) -> null));
+		try {
+			tree.computeIfAbsent("zoo", (k) -> { throw new IllegalStateException(); });
+			Assert.fail();
+		} catch (IllegalStateException e) {
+		}
+		Assert.assertNull(tree.findNode("z").orElse(null));
+		Assert.assertEquals(nodeCount, tree.nodeCount());
+
+		final TernaryTree<Integer> counts = new TernaryTree<>();
+		final List<Thread> threads = new ArrayList<>();
+		for(int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for(int i = 0; i < 10000; i++)
+					counts.merge(Integer.toString(i % 100), 1, Integer::sum);
+			}));
+		}
+		threads.forEach(Thread::start);
+		for(Thread thread:threads) thread.join();
+		Assert.assertEquals(100, counts.size());
+		for(int i = 0; i < 100; i++)
+			Assert.assertEquals(Integer.valueOf(400), counts.get(Integer.toString(i)));
+	}
+
+	@Test
+	public void testCharComparator() {
+		final TernaryTree<String> tree = createTestTree();
+		final TernaryTree<String> boxed = new TernaryTree<>(Comparator.reverseOrder());
+		final TernaryTree<String> primitive = new TernaryTree<>(CharComparator.reverseOrder());
+		boxed.putAll(tree);
+		for(Entry<String, String> entry:tree.entrySet())
+			primitive.put(entry.getKey(), entry.getValue());
+
+		Assert.assertEquals(new ArrayList<>(boxed.entrySet()), new ArrayList<>(primitive.entrySet()));
+		for(String key:tree.keySet()) {
+			Assert.assertEquals(tree.get(key), primitive.get(key));
+			Assert.assertTrue(primitive.containsKey(key));
+		}
+		Assert.assertNull(primitive.get("bett"));
+		Assert.assertEquals("bread", primitive.remove("butter"));
+		Assert.assertFalse(primitive.containsKey("butter"));
+
+		Assert.assertTrue(CharComparator.reverseOrder().compare('a', 'b') > 0);
+		Assert.assertTrue(CharComparator.reverseOrder().reversed().compareChars('a', 'b') < 0);
+		Assert.assertEquals(0, CharComparator.compare(null, 'x', 'x'));
+	}
+
+	@Test
+	public void testCaseFoldedIndex() throws IOException, ClassNotFoundException {
+		final TernaryTree<String> tree = new TernaryTree<>();
+		final TernaryTree<String> indexedTree = new TernaryTree<>();
+		indexedTree.setCaseFoldedIndexEnabled(true);
+		indexedTree.setSuffixIndexEnabled(true);
+		Assert.assertTrue(indexedTree.isCaseFoldedIndexEnabled());
+		final String[] keys = { "apple", "Apple", "APPLY", "aPPly", "banana", "Bandana", "bAn", "grApe" };
+		for(String key:keys) {
+			tree.put(key, key.toUpperCase() + ":" + key);
+			indexedTree.put(key, key.toUpperCase() + ":" + key);
+		}
+
+		for(TernaryTree<String> t:Arrays.asList(tree, indexedTree)) {
+			// exact case preferred
+			Assert.assertEquals("APPLE:Apple", t.get("Apple", false));
+			Assert.assertEquals("APPLE:apple", t.get("apple", false));
+			Assert.assertEquals("APPLE:Apple", t.get("APPLE", false));
+			Assert.assertEquals("BAN:bAn", t.get("BAN", false));
+			Assert.assertTrue(t.containsKey("GRAPE", false));
+			Assert.assertFalse(t.containsKey("GRAPE"));
+			Assert.assertFalse(t.containsKey("BANA", false));
+			Assert.assertNull(t.get("grape"));
+
+			Assert.assertEquals(Arrays.asList("APPLY", "Apple", "aPPly", "apple"), new ArrayList<>(t.keysWithPrefix("APP", false)));
+			Assert.assertEquals(Arrays.asList("Bandana", "bAn", "banana"), new ArrayList<>(t.keysWithPrefix("ban", false)));
+			Assert.assertEquals(Arrays.asList("BANDANA:Bandana", "BAN:bAn", "BANANA:banana"), new ArrayList<>(t.valuesWithPrefix("BaN", false)));
+			Assert.assertEquals(Arrays.asList("Bandana", "bAn", "banana"),
+					t.streamWithPrefix("BAN", false).map(Map.Entry::getKey).collect(Collectors.toList()));
+			Assert.assertEquals(Arrays.asList("APPLY", "aPPly"), new ArrayList<>(t.keysEndingWith("ly", false)));
+			Assert.assertEquals(Arrays.asList("Bandana", "banana"), new ArrayList<>(t.keysEndingWith("ANA", false)));
+		}
+
+		indexedTree.remove("APPLY");
+		indexedTree.put("APPle", "3");
+		Assert.assertEquals(Arrays.asList("APPle", "Apple", "aPPly", "apple"), new ArrayList<>(indexedTree.keysWithPrefix("app", false)));
+		Assert.assertEquals(Arrays.asList("aPPly"), new ArrayList<>(indexedTree.keysEndingWith("LY", false)));
+
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bout)) {
+			out.writeObject(indexedTree);
+		}
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+			@SuppressWarnings("unchecked")
+			final TernaryTree<String> tree2 = (TernaryTree<String>)in.readObject();
+			Assert.assertTrue(tree2.isCaseFoldedIndexEnabled());
+			Assert.assertEquals("3", tree2.get("apPLE", false));
+			Assert.assertEquals(indexedTree.keysEndingWith("ana", false), tree2.keysEndingWith("ana", false));
+		}
+
+		indexedTree.clear();
+		Assert.assertFalse(indexedTree.containsKey("apple", false));
+		Assert.assertTrue(indexedTree.keysWithPrefix("a", false).isEmpty());
+	}
+
+	@Test
+	public void testWithinDistance() {
+		final TernaryTree<String> tree = createTestTree();
+		Assert.assertEquals(tree.size(), tree.keysWithinDistance("bettor", 9).size());
+		Assert.assertEquals(Arrays.asList("better", "butter"), new ArrayList<>(tree.keysWithinDistance("bettor", 2)));
+		Assert.assertEquals(Arrays.asList("better"), new ArrayList<>(tree.keysWithinDistance("bettor", 1)));
+		Assert.assertTrue(tree.keysWithinDistance("bettor", 0).isEmpty());
+		Assert.assertEquals(Arrays.asList("art", "artup"), new ArrayList<>(tree.keysWithinDistance("aXtuX", 3)));
+		Assert.assertEquals(Arrays.asList("", "be"), new ArrayList<>(tree.keysWithinDistance("b", 1)));
+		Assert.assertEquals(Collections.singleton("better"), tree.keysWithinDistance("BETTOR", 1, false));
+		Assert.assertTrue(tree.keysWithinDistance("BETTOR", 1, true).isEmpty());
+		Assert.assertEquals(Arrays.asList("world", "data"), new ArrayList<>(tree.valuesWithinDistance("strick", 3)));
+		Assert.assertEquals(Arrays.asList("stick=world"), tree.entriesWithinDistance("stock", 1).stream().map(Object::toString).collect(java.util.stream.Collectors.toList()));
+	}
+
+	@Test
+	public void testStreams() {
+		final TernaryTree<String> tree = createTestTree();
+		tree.put("\u0000x", "nul");
+		final List<String> keys = new ArrayList<>();
+		tree.keySet().iterator().forEachRemaining(keys::add);
+
+		Assert.assertEquals(keys, tree.keyStream().collect(Collectors.toList()));
+		Assert.assertEquals(keys, tree.keyStream().parallel().collect(Collectors.toList()));
+		Assert.assertEquals(keys, tree.entryStream().parallel().map(Entry::getKey).collect(Collectors.toList()));
+		Assert.assertEquals(new ArrayList<>(tree.values()), tree.values().parallelStream().collect(Collectors.toList()));
+		Assert.assertEquals(tree.size(), tree.entrySet().spliterator().estimateSize());
+		Assert.assertFalse(tree.entrySet().spliterator().hasCharacteristics(Spliterator.SIZED));
+		// removals during traversal must not break sized terminal operations
+		final TernaryTree<String> copy = createTestTree();
+		Assert.assertEquals(copy.size() - 1, copy.keyStream().peek((k) -> { if(k.equals("art")) copy.remove("strap"); }).toArray().length);
+		Assert.assertTrue(tree.keySet().spliterator().hasCharacteristics(Spliterator.SORTED));
+
+		Assert.assertEquals(new ArrayList<>(tree.keysWithPrefix("art")),
+				tree.streamWithPrefix("art").map(Entry::getKey).collect(Collectors.toList()));
+		Assert.assertEquals(new ArrayList<>(tree.keysWithPrefix("BE", false)),
+				tree.streamWithPrefix("BE", false).parallel().map(Entry::getKey).collect(Collectors.toList()));
+		Assert.assertEquals(0, tree.streamWithPrefix("xyz").count());
+
+		final TernaryTree<Integer> large = new TernaryTree<>();
+		for(int i = 0; i < 10000; i++) large.put(Integer.toString(i), i);
+		Assert.assertEquals(new ArrayList<>(large.keySet()), large.keyStream().parallel().collect(Collectors.toList()));
+		Assert.assertEquals(10000L * 9999 / 2, large.values().parallelStream().mapToLong(Integer::longValue).sum());
+
+		tree.entryStream().filter(e -> e.getKey().equals("bet")).forEach(e -> e.setValue("2"));
+		Assert.assertEquals("2", tree.get("bet"));
+	}
+
+	private static class KeyCollector implements TernaryTreeKeyVisitor<Integer> {
+
+		final List<String> keys = new ArrayList<>();
+
+		@Override
+		public boolean visit(TernaryTreeNode<Integer> node, CharSequence key) {
+			if(node.isTerminated())
+				keys.add(key.toString());
+			return false;
+		}
+
+	}
+
+	@Test
+	public void testParallelVisit() {
+		final TernaryTree<Integer> tree = new TernaryTree<>();
+		tree.put("", -1);
+		for(int i = 0; i < 20000; i++) tree.put(Integer.toString(i * 7), i);
+
+		final BinaryOperator<KeyCollector> combiner = (c1, c2) -> {
+			c1.keys.addAll(c2.keys);
+			return c1;
+		};
+		final List<String> expected = new ArrayList<>(tree.keySet());
+		Assert.assertEquals(expected, tree.parallelVisit(KeyCollector::new, combiner).keys);
+
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Assert.assertEquals(expected, tree.parallelVisit(KeyCollector::new, combiner, pool).keys);
+		} finally {
+			pool.shutdown();
+		}
+
+		final TernaryTree<Integer> empty = new TernaryTree<>();
+		Assert.assertTrue(empty.parallelVisit(KeyCollector::new, combiner).keys.isEmpty());
+	}
+
+	@Test
+	public void testDeepTraversal() throws InterruptedException {
+		// sorted single char keys form a chain of right siblings
+		final TernaryTree<Integer> tree = new TernaryTree<>();
+		for(int i = 1; i <= 10000; i++) tree.put(String.valueOf((char)i), i);
+
+		final List<Throwable> errors = new ArrayList<>();
+		final Thread thread = new Thread(null, () -> {
+			try {
+				final int[] counts = new int[3];
+				tree.getRoot().acceptVisitFirst( (node) -> { ++counts[0]; return false; } );
+				tree.getRoot().acceptVisitMiddle( (node) -> { ++counts[1]; return false; } );
+				tree.getRoot().acceptVisitLast( (node) -> { ++counts[2]; return false; } );
+				Assert.assertArrayEquals(new int[] { 10001, 10001, 10001 }, counts);
+				Assert.assertEquals(tree.size(), tree.valuesWithPrefix("").size());
+				Assert.assertEquals(Collections.singleton(String.valueOf((char)10000)), tree.keysEndingWith(String.valueOf((char)10000)));
+			} catch (Throwable e) {
+				errors.add(e);
+			}
+		}, "deep-traversal", 128 * 1024);
+		thread.start();
+		thread.join();
+		Assert.assertTrue(errors.toString(), errors.isEmpty());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		final TernaryTree<String> tree = createTestTree();
+		final List<String> keys = new ArrayList<>(tree.keySet());
+		final int nodeCount = tree.nodeCount();
+
+		final TerminatedNodeIterator<String> itr = new TerminatedNodeIterator<>(tree);
+		final List<String> visited = new ArrayList<>();
+		while(itr.hasNext()) {
+			itr.next();
+			visited.add(itr.getCurrentKey().toString());
+			if(itr.getCurrentKey().toString().startsWith("b"))
+				itr.remove();
+		}
+		Assert.assertEquals(keys, visited);
+		Assert.assertFalse(itr.hasNext());
+		try {
+			itr.next();
+			Assert.fail();
+		} catch (NoSuchElementException e) {}
+
+		Assert.assertTrue(tree.keysWithPrefix("b").isEmpty());
+		Assert.assertEquals(keys.size() - 5, tree.size());
+		Assert.assertTrue(tree.nodeCount() < nodeCount);
+
+		// continue after a node, filter applies to all nodes
+		final TerminatedNodeIterator<String> filtered = new TerminatedNodeIterator<>(tree, (n) -> !n.getValue().equals("empty"));
+		filtered.setCurrentNode(tree.findNode("artist").get());
+		Assert.assertEquals("artist", filtered.getCurrentKey().toString());
+		filtered.next();
+		Assert.assertEquals("artup", filtered.getCurrentKey().toString());
+		filtered.reset();
+		filtered.next();
+		Assert.assertEquals("arbitrary", filtered.getCurrentKey().toString());
+	}
+
+	/*
+	 * Node count of a fully pruned tree, one node per distinct prefix plus the root
+	 */
+	private int prunedNodeCount(Collection<String> keys) {
+		final Set<String> prefixes = new HashSet<>();
+		for(String key:keys) {
+			for(int i = 1; i <= key.length(); i++)
+				prefixes.add(key.substring(0, i));
+		}
+		return prefixes.size() + 1;
+	}
+
+	@Test
+	public void testIteratorRemovePrunes() {
+		// remove and stop iterating
+		final TernaryTree<String> tree = createTestTree();
+		final Iterator<String> keyItr = tree.keySet().iterator();
+		while(keyItr.hasNext()) {
+			if(keyItr.next().equals("bazar")) {
+				keyItr.remove();
+				break;
+			}
+		}
+		Assert.assertFalse(tree.containsKey("bazar"));
+		Assert.assertEquals(prunedNodeCount(tree.keySet()), tree.nodeCount());
+
+		// remove after hasNext and continue
+		final List<String> remaining = new ArrayList<>();
+		final Iterator<String> itr = tree.keySet().iterator();
+		while(itr.hasNext()) {
+			final String key = itr.next();
+			final boolean remove = key.startsWith("art") || key.equals("be") || key.equals("butter");
+			if(itr.hasNext() && remove)
+				itr.remove();
+			else
+				remaining.add(key);
+		}
+		Assert.assertEquals(remaining, new ArrayList<>(tree.keySet()));
+		Assert.assertEquals(Arrays.asList("", "arbitrary", "bet", "better", "orb", "stick", "strap"), remaining);
+		Assert.assertEquals(prunedNodeCount(remaining), tree.nodeCount());
+
+		// remove every key with prefix
+		final TernaryTreeNode<String> prefixNode = tree.findNode("be").get();
+		final TerminatedNodeIterator<String> prefixItr = new TerminatedNodeIterator<>(tree, prefixNode, (n) -> true, true);
+		final List<String> visited = new ArrayList<>();
+		while(prefixItr.hasNext()) {
+			prefixItr.next();
+			visited.add(prefixItr.getCurrentKey().toString());
+			prefixItr.remove();
+		}
+		Assert.assertEquals(Arrays.asList("bet", "better"), visited);
+		Assert.assertEquals(Arrays.asList("", "arbitrary", "orb", "stick", "strap"), new ArrayList<>(tree.keySet()));
+		Assert.assertEquals(prunedNodeCount(tree.keySet()), tree.nodeCount());
+
+		// descending
+		final TernaryTree<String> tree2 = createTestTree();
+		final List<String> descending = new ArrayList<>();
+		final Iterator<String> descItr = tree2.descendingKeySet().iterator();
+		int i = 0;
+		while(descItr.hasNext()) {
+			descending.add(descItr.next());
+			if(i++ % 2 == 0)
+				descItr.remove();
+		}
+		final List<String> expected = new ArrayList<>(createTestTree().keySet());
+		Collections.reverse(expected);
+		Assert.assertEquals(expected, descending);
+		Assert.assertEquals(expected.size() / 2, tree2.size());
+		Assert.assertEquals(prunedNodeCount(tree2.keySet()), tree2.nodeCount());
+	}
+
+	@Test
+	public void testSize() {
+		final TernaryTree<String> tree = createTestTree();
+		Assert.assertEquals(13, tree.size());
+		Assert.assertFalse(tree.isEmpty());
+
+		tree.put("bet", "2");
+		Assert.assertEquals(13, tree.size());
+		tree.remove("bet");
+		Assert.assertEquals(12, tree.size());
+		tree.remove("bet");
+		Assert.assertEquals(12, tree.size());
+		tree.remove("unknown");
+		Assert.assertEquals(12, tree.size());
+		Assert.assertEquals(tree.keySet().size(), tree.size());
+
+		tree.clear();
+		Assert.assertEquals(0, tree.size());
+		Assert.assertTrue(tree.isEmpty());
+		tree.put("again", "1");
+		Assert.assertEquals(1, tree.size());
+		Assert.assertEquals("1", tree.get("again"));
+	}
+
+	@Test
+	public void testViews() {
+		final TernaryTree<String> tree = createTestTree();
+		final Set<String> keySet = tree.keySet();
+		final Collection<String> values = tree.values();
+		final Set<Entry<String, String>> entrySet = tree.entrySet();
+
+		Assert.assertEquals(13, keySet.size());
+		Assert.assertTrue(keySet.contains("artist"));
+		Assert.assertFalse(keySet.contains("artis"));
+		Assert.assertTrue(values.contains("bread"));
+		Assert.assertTrue(entrySet.contains(new AbstractMap.SimpleEntry<>("strap", "data")));
+		Assert.assertFalse(entrySet.contains(new AbstractMap.SimpleEntry<>("strap", "1")));
+
+		// views are live
+		tree.put("zoo", "animals");
+		Assert.assertEquals(14, keySet.size());
+		Assert.assertTrue(keySet.contains("zoo"));
+
+		Assert.assertTrue(keySet.remove("zoo"));
+		Assert.assertFalse(tree.containsKey("zoo"));
+		Assert.assertEquals(13, tree.size());
+
+		final Iterator<Entry<String, String>> itr = entrySet.iterator();
+		while(itr.hasNext()) {
+			final Entry<String, String> entry = itr.next();
+			if(entry.getKey().equals("butter")) {
+				entry.setValue("toast");
+			} else if(entry.getKey().startsWith("art")) {
+				itr.remove();
+			}
+		}
+		Assert.assertEquals("toast", tree.get("butter"));
+		Assert.assertFalse(tree.containsKey("art"));
+		Assert.assertFalse(tree.containsKey("artist"));
+		Assert.assertTrue(tree.containsKey("arbitrary"));
+		Assert.assertEquals(10, tree.size());
+		Assert.assertEquals(new ArrayList<>(keySet), Arrays.asList("", "arbitrary", "bazar", "be", "bet", "better", "butter", "orb", "stick", "strap"));
+	}
+
+	@Test
+	public void testRemovedEntrySetValue() {
+		final TernaryTree<Integer> tree = new TernaryTree<>();
+		tree.put("abc", 1);
+		tree.put("abd", 2);
+		final Entry<String, Integer> entry = tree.entrySet().iterator().next();
+		Assert.assertEquals("abc", entry.getKey());
+
+		tree.remove("abc");
+		try {
+			entry.setValue(5);
+			Assert.fail();
+		} catch (IllegalStateException e) {}
+		Assert.assertEquals(1, tree.size());
+		Assert.assertEquals(1, tree.entrySet().size());
+		Assert.assertNull(tree.get("abc"));
+	}
+
+	@Test
+	public void testKeyVisitor() {
+		final TernaryTree<String> tree = createTestTree();
+
+		final List<String> keys = new ArrayList<>();
+		tree.getRoot().acceptVisitMiddle((TernaryTreeKeyVisitor<String>) (node, key) -> {
+			Assert.assertEquals(node.getPrefix(), key.toString());
+			if(node.isTerminated())
+				keys.add(key.toString());
+			return false;
+		});
+		Assert.assertEquals(new ArrayList<>(tree.keySet()), keys);
+		Assert.assertEquals(tree.keySet(), tree.keysWithPrefix(""));
+
+		final TerminatedNodeIterator<String> itr = new TerminatedNodeIterator<>(tree, tree.findNode("art").get(), (n) -> true, true);
+		final List<String> prefixKeys = new ArrayList<>();
+		while(itr.hasNext()) {
+			itr.next();
+			prefixKeys.add(itr.getCurrentKey().toString());
+		}
+		Assert.assertEquals(Arrays.asList("art", "artist", "artup"), prefixKeys);
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("better", "butter")), tree.keysContaining("tt"));
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("bazar")), tree.keysEndingWith("AR", false));
+		Assert.assertEquals(Arrays.asList("data"), new ArrayList<>(tree.valuesForKeysEndingWith("ap")));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		final TernaryTree<Integer> tree = new TernaryTree<>();
+		final int numKeys = 2000;
+		final List<Thread> threads = new ArrayList<>();
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+		for(int t = 0; t < 4; t++) {
+			final int offset = t;
+			threads.add(new Thread(() -> {
+				try {
+					for(int i = offset; i < numKeys; i += 4) {
+						tree.put(Integer.toString(i), i);
+						Assert.assertEquals(Integer.valueOf(i), tree.get(Integer.toString(i)));
+						tree.keysWithPrefix(Integer.toString(offset));
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for(Thread thread:threads) thread.join();
+
+		Assert.assertTrue(errors.isEmpty());
+		Assert.assertEquals(numKeys, tree.size());
+		for(int i = 0; i < numKeys; i++) {
+			Assert.assertEquals(Integer.valueOf(i), tree.get(Integer.toString(i)));
+		}
+	}
+
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TernaryTreeSnapshotTest {
+
+	private final TSTTest tstTest = new TSTTest();
+
+	@Test
+	public void testSnapshot() throws IOException {
+		final TernaryTree<String> tree = tstTest.createTestTree();
+		final Path file = Files.createTempFile("tst", ".snapshot");
+		try {
+			tree.writeSnapshot(file, TernaryTreeValueSerializer.forStrings());
+			final TernaryTreeSnapshot<String> snapshot = TernaryTreeSnapshot.open(file, TernaryTreeValueSerializer.forStrings());
+
+			Assert.assertEquals(tree.size(), snapshot.size());
+			Assert.assertEquals(new HashMap<>(tree), snapshot);
+			Assert.assertEquals(new ArrayList<>(tree.keySet()), new ArrayList<>(snapshot.keySet()));
+			Assert.assertEquals("world", snapshot.get("stick"));
+			Assert.assertEquals("empty", snapshot.get(""));
+			Assert.assertNull(snapshot.get("stic"));
+			Assert.assertFalse(snapshot.containsKey("stic"));
+			Assert.assertNull(snapshot.get("zzz"));
+
+			Assert.assertEquals(tree.keysWithPrefix("art"), snapshot.keysWithPrefix("art"));
+			Assert.assertEquals(tree.keysWithPrefix(""), snapshot.keysWithPrefix(""));
+			Assert.assertEquals(new ArrayList<>(tree.valuesWithPrefix("be")), new ArrayList<>(snapshot.valuesWithPrefix("be")));
+			Assert.assertEquals(tree.keysEndingWith("ar"), snapshot.keysEndingWith("ar"));
+			Assert.assertEquals(tree.keysEndingWith("AR", false), snapshot.keysEndingWith("AR", false));
+			Assert.assertEquals(tree.keysContaining("tt"), snapshot.keysContaining("tt"));
+			Assert.assertEquals(tree.keysContaining("TT", false), snapshot.keysContaining("TT", false));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testEmptySnapshot() throws IOException {
+		final Path file = Files.createTempFile("tst", ".snapshot");
+		try {
+			new TernaryTree<Integer>().writeSnapshot(file, TernaryTreeValueSerializer.forIntegers());
+			final TernaryTreeSnapshot<Integer> snapshot = TernaryTreeSnapshot.open(file, TernaryTreeValueSerializer.forIntegers());
+			Assert.assertTrue(snapshot.isEmpty());
+			Assert.assertEquals(1, snapshot.nodeCount());
+			Assert.assertNull(snapshot.get("a"));
+			Assert.assertTrue(snapshot.keysWithPrefix("").isEmpty());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testComparatorMismatch() throws IOException {
+		final TernaryTree<String> reversed = new TernaryTree<>(CharComparator.reverseOrder());
+		reversed.putAll(tstTest.createTestTree());
+		final Path file = Files.createTempFile("tst", ".snapshot");
+		try {
+			reversed.writeSnapshot(file, TernaryTreeValueSerializer.forStrings());
+			try {
+				TernaryTreeSnapshot.open(file, TernaryTreeValueSerializer.forStrings());
+				Assert.fail();
+			} catch (IOException e) {}
+			try {
+				TernaryTreeSnapshot.open(file, TernaryTreeValueSerializer.forStrings(), Comparator.<Character>naturalOrder());
+				Assert.fail();
+			} catch (IOException e) {}
+			final TernaryTreeSnapshot<String> snapshot = TernaryTreeSnapshot.open(file, TernaryTreeValueSerializer.forStrings(),
+					CharComparator.reverseOrder());
+			Assert.assertEquals(new ArrayList<>(reversed.keySet()), new ArrayList<>(snapshot.keySet()));
+
+			tstTest.createTestTree().writeSnapshot(file, TernaryTreeValueSerializer.forStrings());
+			try {
+				TernaryTreeSnapshot.open(file, TernaryTreeValueSerializer.forStrings(), CharComparator.reverseOrder());
+				Assert.fail();
+			} catch (IOException e) {}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
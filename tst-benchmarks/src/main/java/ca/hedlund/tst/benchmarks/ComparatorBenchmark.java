@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ca.hedlund.tst.CharComparator;
+import ca.hedlund.tst.TernaryTree;
+
+/**
+ * Cost of the char comparator in point operations.  Natural ordering is
+ * compared with reverse ordering using a boxed Comparator&lt;Character&gt;
+ * and a primitive {@link CharComparator}.  The TreeMap baseline compares
+ * keys char by char with the same ordering, HashMap is not included since
+ * it does not use the comparator.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx12g" })
+public class ComparatorBenchmark {
+
+	public enum Impl {
+		TERNARY_TREE,
+		TREE_MAP
+	}
+
+	public enum CharOrder {
+		NATURAL,
+		BOXED_REVERSE,
+		CHAR_REVERSE
+	}
+
+	@Param({ "10000", "100000", "1000000", "10000000" })
+	private int size;
+
+	@Param({ "SORTED", "SHUFFLED" })
+	private Lexicon.Order order;
+
+	@Param({ "TERNARY_TREE", "TREE_MAP" })
+	private Impl impl;
+
+	@Param({ "NATURAL", "BOXED_REVERSE", "CHAR_REVERSE" })
+	private CharOrder comparator;
+
+	private String[] hits;
+
+	private Map<String, Integer> map;
+
+	private int hitIndex;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final String[] keys = Lexicon.words(size, order, Lexicon.SEED);
+		hits = Lexicon.shuffled(keys, Lexicon.SEED + 1);
+		map = newMap();
+		for(int i = 0; i < keys.length; i++)
+			map.put(keys[i], i);
+	}
+
+	private Comparator<Character> charComparator() {
+		switch(comparator) {
+		case BOXED_REVERSE:
+			return Comparator.reverseOrder();
+
+		case CHAR_REVERSE:
+			return CharComparator.reverseOrder();
+
+		default:
+			return null;
+		}
+	}
+
+	private Map<String, Integer> newMap() {
+		final Comparator<Character> charComparator = charComparator();
+		if(impl == Impl.TERNARY_TREE)
+			return new TernaryTree<>(charComparator);
+		return (charComparator == null ? new TreeMap<>() : new TreeMap<>(keyComparator(charComparator)));
+	}
+
+	private static Comparator<String> keyComparator(Comparator<Character> charComparator) {
+		return (k1, k2) -> {
+			final int len = Math.min(k1.length(), k2.length());
+			for(int i = 0; i < len; i++) {
+				final int cmp = charComparator.compare(k1.charAt(i), k2.charAt(i));
+				if(cmp != 0) return cmp;
+			}
+			return k1.length() - k2.length();
+		};
+	}
+
+	@Benchmark
+	public Integer get() {
+		final String key = hits[hitIndex];
+		if(++hitIndex == hits.length) hitIndex = 0;
+		return map.get(key);
+	}
+
+	/**
+	 * Replace the value of an existing key
+	 */
+	@Benchmark
+	public Integer putExisting() {
+		final int index = hitIndex;
+		if(++hitIndex == hits.length) hitIndex = 0;
+		return map.put(hits[index], index);
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst.benchmarks;
+
+import java.util.*;
+
+/**
+ * Generates repeatable English-like word lists from onset, nucleus and
+ * coda syllable parts.  Word lengths vary from one to four syllables with
+ * shorter words more frequent, similar to a natural lexicon.
+ */
+public final class Lexicon {
+
+	public enum Order {
+		SORTED,
+		SHUFFLED
+	}
+
+	public static final long SEED = 0x7e57L;
+
+	private static final String[] ONSETS = {
+		"", "", "b", "c", "d", "f", "g", "h", "j", "k", "l", "m", "n", "p", "r", "s", "t", "v", "w", "y", "z",
+		"bl", "br", "ch", "cl", "cr", "dr", "fl", "fr", "gl", "gr", "pl", "pr", "sc", "sh", "sk", "sl", "sm",
+		"sn", "sp", "st", "str", "sw", "th", "tr", "tw", "wh", "wr"
+	};
+
+	private static final String[] NUCLEI = {
+		"a", "e", "i", "o", "u", "a", "e", "i", "o", "ai", "au", "ea", "ee", "ie", "oa", "oo", "ou", "y"
+	};
+
+	private static final String[] CODAS = {
+		"", "", "", "b", "ck", "d", "ft", "g", "ll", "m", "n", "nd", "ng", "nt", "p", "r", "rd", "rk", "rn",
+		"s", "sh", "ss", "st", "t", "th", "x"
+	};
+
+	private static final String[] SUFFIXES = {
+		"", "", "", "", "s", "ed", "er", "ing", "ly", "ness", "tion", "able"
+	};
+
+	private Lexicon() {
+	}
+
+	/**
+	 * Generate size distinct words
+	 *
+	 * @param size
+	 * @param order
+	 * @param seed
+	 * @return words
+	 */
+	public static String[] words(int size, Order order, long seed) {
+		final Random random = new Random(seed);
+		final Set<String> words = new LinkedHashSet<>(size * 2);
+		while(words.size() < size)
+			words.add(word(random));
+		final String[] retVal = words.toArray(new String[0]);
+		if(order == Order.SORTED)
+			Arrays.sort(retVal);
+		else
+			shuffle(retVal, random);
+		return retVal;
+	}
+
+	/**
+	 * Generate count words which are not in the given word list
+	 *
+	 * @param words
+	 * @param count
+	 * @param seed
+	 * @return words not in list
+	 */
+	public static String[] misses(String[] words, int count, long seed) {
+		final Set<String> existing = new HashSet<>(Arrays.asList(words));
+		final Random random = new Random(seed);
+		final String[] retVal = new String[count];
+		for(int i = 0; i < count;) {
+			final String word = word(random);
+			if(!existing.contains(word))
+				retVal[i++] = word;
+		}
+		return retVal;
+	}
+
+	/**
+	 * Sample count substrings of the given length from words, taken from the
+	 * start, end or a random position of each sampled word
+	 *
+	 * @param words
+	 * @param count
+	 * @param length
+	 * @param position -1 for prefixes, 1 for suffixes and 0 for infixes
+	 * @param seed
+	 * @return substrings
+	 */
+	public static String[] sample(String[] words, int count, int length, int position, long seed) {
+		final Random random = new Random(seed);
+		final String[] retVal = new String[count];
+		for(int i = 0; i < count;) {
+			final String word = words[random.nextInt(words.length)];
+			if(word.length() < length) continue;
+			final int start = (position < 0 ? 0
+					: position > 0 ? word.length() - length
+					: random.nextInt(word.length() - length + 1));
+			retVal[i++] = word.substring(start, start + length);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Copy of words in random order
+	 *
+	 * @param words
+	 * @param seed
+	 * @return shuffled copy
+	 */
+	public static String[] shuffled(String[] words, long seed) {
+		final String[] retVal = Arrays.copyOf(words, words.length);
+		shuffle(retVal, new Random(seed));
+		return retVal;
+	}
+
+	private static String word(Random random) {
+		final StringBuilder builder = new StringBuilder();
+		final double r = random.nextDouble();
+		final int syllables = (r < 0.35 ? 1 : r < 0.75 ? 2 : r < 0.93 ? 3 : 4);
+		for(int i = 0; i < syllables; i++) {
+			builder.append(ONSETS[random.nextInt(ONSETS.length)]);
+			builder.append(NUCLEI[random.nextInt(NUCLEI.length)]);
+			builder.append(CODAS[random.nextInt(CODAS.length)]);
+		}
+		builder.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+		return builder.toString();
+	}
+
+	private static void shuffle(String[] words, Random random) {
+		for(int i = words.length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final String tmp = words[i];
+			words[i] = words[j];
+			words[j] = tmp;
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ca.hedlund.tst.TernaryTree;
+
+/**
+ * Point operations on TernaryTree with TreeMap and HashMap baselines.
+ * Lookups cycle through the keys in random order so results do not
+ * depend on insertion order locality.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx12g" })
+public class MapBenchmark {
+
+	public enum Impl {
+		TERNARY_TREE,
+		TREE_MAP,
+		HASH_MAP
+	}
+
+	@Param({ "10000", "100000", "1000000", "10000000" })
+	private int size;
+
+	@Param({ "SORTED", "SHUFFLED" })
+	private Lexicon.Order order;
+
+	@Param({ "TERNARY_TREE", "TREE_MAP", "HASH_MAP" })
+	private Impl impl;
+
+	private String[] keys;
+
+	private String[] hits;
+
+	private String[] misses;
+
+	private Map<String, Integer> map;
+
+	private int hitIndex;
+
+	private int missIndex;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		keys = Lexicon.words(size, order, Lexicon.SEED);
+		hits = Lexicon.shuffled(keys, Lexicon.SEED + 1);
+		misses = Lexicon.misses(keys, Math.min(size, 100000), Lexicon.SEED + 2);
+		map = fill(newMap());
+	}
+
+	private Map<String, Integer> newMap() {
+		switch(impl) {
+		case TERNARY_TREE:
+			return new TernaryTree<>();
+
+		case TREE_MAP:
+			return new TreeMap<>();
+
+		default:
+			return new HashMap<>();
+		}
+	}
+
+	private Map<String, Integer> fill(Map<String, Integer> m) {
+		for(int i = 0; i < keys.length; i++)
+			m.put(keys[i], i);
+		return m;
+	}
+
+	@Benchmark
+	public Integer get() {
+		final String key = hits[hitIndex];
+		if(++hitIndex == hits.length) hitIndex = 0;
+		return map.get(key);
+	}
+
+	@Benchmark
+	public Integer getMiss() {
+		final String key = misses[missIndex];
+		if(++missIndex == misses.length) missIndex = 0;
+		return map.get(key);
+	}
+
+	@Benchmark
+	public boolean containsKey() {
+		final String key = hits[hitIndex];
+		if(++hitIndex == hits.length) hitIndex = 0;
+		return map.containsKey(key);
+	}
+
+	/**
+	 * Replace the value of an existing key
+	 */
+	@Benchmark
+	public Integer putExisting() {
+		final int index = hitIndex;
+		if(++hitIndex == hits.length) hitIndex = 0;
+		return map.put(hits[index], index);
+	}
+
+	/**
+	 * Insert every key into an empty map
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public Map<String, Integer> build() {
+		return fill(newMap());
+	}
+
+}
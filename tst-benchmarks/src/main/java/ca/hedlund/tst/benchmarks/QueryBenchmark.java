@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.hedlund.tst.TerminatedNodeIterator;
+import ca.hedlund.tst.TernaryTree;
+import ca.hedlund.tst.TernaryTreeNode;
+
+/**
+ * Prefix, infix and suffix queries and full iteration.  The TreeMap
+ * baseline answers prefix queries with a sub map, infix and suffix
+ * queries are answered by scanning every key.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx12g" })
+public class QueryBenchmark {
+
+	private static final int QUERY_COUNT = 1024;
+
+	@State(Scope.Benchmark)
+	public static class Corpus {
+
+		@Param({ "10000", "100000", "1000000", "10000000" })
+		int size;
+
+		@Param({ "SORTED", "SHUFFLED" })
+		Lexicon.Order order;
+
+		String[] keys;
+
+		String[] prefixes;
+
+		String[] infixes;
+
+		String[] suffixes;
+
+		int queryIndex;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			keys = Lexicon.words(size, order, Lexicon.SEED);
+			prefixes = Lexicon.sample(keys, QUERY_COUNT, 3, -1, Lexicon.SEED + 1);
+			infixes = Lexicon.sample(keys, QUERY_COUNT, 4, 0, Lexicon.SEED + 2);
+			suffixes = Lexicon.sample(keys, QUERY_COUNT, 4, 1, Lexicon.SEED + 3);
+		}
+
+		int nextQuery() {
+			final int retVal = queryIndex;
+			queryIndex = (queryIndex + 1) % QUERY_COUNT;
+			return retVal;
+		}
+
+	}
+
+	@State(Scope.Benchmark)
+	public static class Tree {
+
+		/* suffix and infix indexes enabled */
+		@Param({ "false", "true" })
+		boolean indexed;
+
+		TernaryTree<Integer> tree;
+
+		@Setup(Level.Trial)
+		public void setup(Corpus corpus) {
+			tree = new TernaryTree<>();
+			for(int i = 0; i < corpus.keys.length; i++)
+				tree.put(corpus.keys[i], i);
+			tree.setSuffixIndexEnabled(indexed);
+			tree.setInfixIndexEnabled(indexed);
+		}
+
+	}
+
+	@State(Scope.Benchmark)
+	public static class Baseline {
+
+		TreeMap<String, Integer> treeMap;
+
+		@Setup(Level.Trial)
+		public void setup(Corpus corpus) {
+			treeMap = new TreeMap<>();
+			for(int i = 0; i < corpus.keys.length; i++)
+				treeMap.put(corpus.keys[i], i);
+		}
+
+	}
+
+	@Benchmark
+	public Set<String> keysWithPrefix(Corpus corpus, Tree tree) {
+		return tree.tree.keysWithPrefix(corpus.prefixes[corpus.nextQuery()]);
+	}
+
+	@Benchmark
+	public Set<String> keysContaining(Corpus corpus, Tree tree) {
+		return tree.tree.keysContaining(corpus.infixes[corpus.nextQuery()]);
+	}
+
+	@Benchmark
+	public Set<String> keysEndingWith(Corpus corpus, Tree tree) {
+		return tree.tree.keysEndingWith(corpus.suffixes[corpus.nextQuery()]);
+	}
+
+	@Benchmark
+	public void iterate(Tree tree, Blackhole blackhole) {
+		final TerminatedNodeIterator<Integer> itr = new TerminatedNodeIterator<>(tree.tree);
+		while(itr.hasNext()) {
+			final TernaryTreeNode<Integer> node = itr.next();
+			blackhole.consume(itr.getCurrentKey());
+			blackhole.consume(node.getValue());
+		}
+	}
+
+	@Benchmark
+	public Set<String> treeMapKeysWithPrefix(Corpus corpus, Baseline baseline) {
+		final String prefix = corpus.prefixes[corpus.nextQuery()];
+		return new LinkedHashSet<>(baseline.treeMap.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet());
+	}
+
+	@Benchmark
+	public Set<String> treeMapKeysContaining(Corpus corpus, Baseline baseline) {
+		final String infix = corpus.infixes[corpus.nextQuery()];
+		final Set<String> retVal = new LinkedHashSet<>();
+		for(String key:baseline.treeMap.keySet()) {
+			if(key.contains(infix))
+				retVal.add(key);
+		}
+		return retVal;
+	}
+
+	@Benchmark
+	public Set<String> treeMapKeysEndingWith(Corpus corpus, Baseline baseline) {
+		final String suffix = corpus.suffixes[corpus.nextQuery()];
+		final Set<String> retVal = new LinkedHashSet<>();
+		for(String key:baseline.treeMap.keySet()) {
+			if(key.endsWith(suffix))
+				retVal.add(key);
+		}
+		return retVal;
+	}
+
+	@Benchmark
+	public void treeMapIterate(Baseline baseline, Blackhole blackhole) {
+		for(Map.Entry<String, Integer> entry:baseline.treeMap.entrySet()) {
+			blackhole.consume(entry.getKey());
+			blackhole.consume(entry.getValue());
+		}
+	}
+
+}
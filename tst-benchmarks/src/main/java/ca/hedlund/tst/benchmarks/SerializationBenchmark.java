@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012-2020 Gregory Hedlund <https://www.phon.ca>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *    http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ca.hedlund.tst.benchmarks;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ca.hedlund.tst.TernaryTree;
+import ca.hedlund.tst.TernaryTreeValueSerializer;
+
+/**
+ * Java serialization and the binary tree format, with a serialized
+ * TreeMap as baseline.
+ */
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx12g" })
+public class SerializationBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	private int size;
+
+	private TernaryTree<Integer> tree;
+
+	private TreeMap<String, Integer> treeMap;
+
+	private byte[] serializedTree;
+
+	private byte[] encodedTree;
+
+	private byte[] serializedTreeMap;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		final String[] keys = Lexicon.words(size, Lexicon.Order.SHUFFLED, Lexicon.SEED);
+		tree = new TernaryTree<>();
+		treeMap = new TreeMap<>();
+		for(int i = 0; i < keys.length; i++) {
+			tree.put(keys[i], i);
+			treeMap.put(keys[i], i);
+		}
+		serializedTree = serialize(tree);
+		encodedTree = encode(tree);
+		serializedTreeMap = serialize(treeMap);
+	}
+
+	private static byte[] serialize(Object obj) throws IOException {
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bout)) {
+			out.writeObject(obj);
+		}
+		return bout.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+
+	private static byte[] encode(TernaryTree<Integer> tree) throws IOException {
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		tree.writeTo(bout, TernaryTreeValueSerializer.forIntegers());
+		return bout.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] writeObject() throws IOException {
+		return serialize(tree);
+	}
+
+	@Benchmark
+	public Object readObject() throws IOException, ClassNotFoundException {
+		return deserialize(serializedTree);
+	}
+
+	@Benchmark
+	public byte[] writeTo() throws IOException {
+		return encode(tree);
+	}
+
+	@Benchmark
+	public TernaryTree<Integer> readFrom() throws IOException {
+		return TernaryTree.readFrom(new ByteArrayInputStream(encodedTree), TernaryTreeValueSerializer.forIntegers());
+	}
+
+	@Benchmark
+	public byte[] treeMapWriteObject() throws IOException {
+		return serialize(treeMap);
+	}
+
+	@Benchmark
+	public Object treeMapReadObject() throws IOException, ClassNotFoundException {
+		return deserialize(serializedTreeMap);
+	}
+
+}